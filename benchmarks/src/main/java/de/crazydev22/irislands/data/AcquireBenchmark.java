@@ -0,0 +1,101 @@
+package de.crazydev22.irislands.data;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.crazydev22.irislands.util.Executor;
+import de.crazydev22.irislands.util.IoExecutor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Concurrent region acquisition. {@link RegionManager} needs a running server, so this reproduces
+ * its cache setup over plain region files: the async cache opening files and reading slots on the
+ * I/O executor with decompression on the CPU pool, against doing all of it inline on the CPU pool.
+ * The cache holds fewer regions than are requested to keep files being reopened.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class AcquireBenchmark {
+	@Param({"64"})
+	public int regions;
+	@Param({"32"})
+	public int cached;
+
+	private File dir;
+	private ExecutorService cpu;
+	private ExecutorService io;
+	private AsyncCache<Long, RegionFile> async;
+	private Cache<Long, RegionFile> blocking;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dir = Synthetic.tempDir();
+		var random = new Random(42);
+		for (int i = 0; i < regions; i++)
+			Synthetic.region(file(i), random, 256, 1024);
+		cpu = new Executor("Bench", Thread.NORM_PRIORITY);
+		io = IoExecutor.create("Bench I/O", 4, false, Logger.getAnonymousLogger());
+		async = Caffeine.newBuilder().maximumSize(cached).executor(io).buildAsync();
+		blocking = Caffeine.newBuilder().maximumSize(cached).executor(cpu).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		cpu.shutdown();
+		io.shutdown();
+		Synthetic.delete(dir);
+	}
+
+	@Benchmark
+	public byte[] asyncAcquire() {
+		int region = ThreadLocalRandom.current().nextInt(regions);
+		int slot = ThreadLocalRandom.current().nextInt(RegionFile.SLOTS);
+		return async.get((long) region, (key, executor) -> CompletableFuture.supplyAsync(() -> open(region), io))
+				.thenApplyAsync(file -> read(file, slot), io)
+				.thenApplyAsync(RegionFile::decompress, cpu)
+				.join();
+	}
+
+	@Benchmark
+	public byte[] blockingAcquire() {
+		int region = ThreadLocalRandom.current().nextInt(regions);
+		int slot = ThreadLocalRandom.current().nextInt(RegionFile.SLOTS);
+		return CompletableFuture.supplyAsync(() -> RegionFile.decompress(read(blocking.get((long) region, key -> open(region)), slot)), cpu)
+				.join();
+	}
+
+	private File file(int region) {
+		return new File(dir, region + "_0.lz4b");
+	}
+
+	private RegionFile open(int region) {
+		try {
+			return new RegionFile(file(region), Synthetic.CODECS);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static byte[] read(RegionFile file, int slot) {
+		try {
+			return file.readMantle(slot);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package de.crazydev22.irislands.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payload conversions: the LZ4 block codec and a compressed Base64 transport of FAST clipboard bytes,
+ * as the LZ4Block files migrated by {@link RegionMigrator} carried them, against the raw bytes stored today.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+	@Param({"2048", "16384", "131072"})
+	public int size;
+
+	private byte[] raw;
+	private byte[] compressed;
+	private byte[] legacy;
+
+	@Setup
+	public void setup() {
+		raw = Synthetic.payload(new Random(42), size);
+		compressed = RegionFile.compress(raw);
+		legacy = legacyEncode(raw);
+	}
+
+	@Benchmark
+	public byte[] compress() {
+		return RegionFile.compress(raw);
+	}
+
+	@Benchmark
+	public byte[] decompress() {
+		return RegionFile.decompress(compressed);
+	}
+
+	@Benchmark
+	public byte[] legacyEncode() {
+		return legacyEncode(raw);
+	}
+
+	@Benchmark
+	public byte[] legacyDecode() {
+		return Base64.getDecoder().decode(new String(RegionFile.decompress(legacy), StandardCharsets.US_ASCII));
+	}
+
+	@Benchmark
+	public byte[] rawCopy() {
+		return raw.clone();
+	}
+
+	private static byte[] legacyEncode(byte[] data) {
+		return RegionFile.compress(Base64.getEncoder().encodeToString(data).getBytes(StandardCharsets.US_ASCII));
+	}
+}
@@ -0,0 +1,73 @@
+package de.crazydev22.irislands.data;
+
+import de.crazydev22.irislands.codec.Codec;
+import de.crazydev22.irislands.codec.Codecs;
+import de.crazydev22.irislands.codec.DictionaryTrainer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode throughput of every mantle codec. The compression ratio over a fixed sample
+ * set is printed once per trial, the dictionary is trained from a separate sample set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+	private static final int SAMPLES = 64;
+
+	@Param({"lz4", "lz4-hc", "deflate", "deflate-dict"})
+	public String codec;
+	@Param({"2048", "16384"})
+	public int size;
+
+	private Codec instance;
+	private byte[] raw;
+	private byte[] compressed;
+	private byte[] out;
+
+	@Setup
+	public void setup() {
+		var random = new Random(42);
+		List<byte[]> training = new ArrayList<>();
+		for (int i = 0; i < SAMPLES * 4; i++)
+			training.add(Synthetic.payload(random, size));
+
+		instance = switch (codec) {
+			case "deflate-dict" -> Codecs.create(Codec.Type.DEFLATE, 6,
+					DictionaryTrainer.train(training, DictionaryTrainer.MAX_SIZE));
+			case "deflate" -> Codecs.create(Codec.Type.DEFLATE, 6, null);
+			default -> Codecs.create(Codec.Type.byName(codec), 9, null);
+		};
+
+		long rawBytes = 0, compressedBytes = 0;
+		for (int i = 0; i < SAMPLES; i++) {
+			byte[] sample = Synthetic.payload(random, size);
+			rawBytes += sample.length;
+			compressedBytes += instance.compress(sample).length;
+		}
+		System.out.printf("%n%s @ %d bytes: compression ratio %.2f%n", codec, size, rawBytes / (double) compressedBytes);
+
+		raw = Synthetic.payload(random, size);
+		compressed = instance.compress(raw);
+		out = new byte[size];
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		return instance.compress(raw);
+	}
+
+	@Benchmark
+	public byte[] decode() {
+		instance.decompress(compressed, out);
+		return out;
+	}
+}
@@ -0,0 +1,60 @@
+package de.crazydev22.irislands.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Slot index math and the captured chunk lookup done for every chunk load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexBenchmark {
+	private static final int COORDINATES = 4096;
+
+	private final int[] xs = new int[COORDINATES];
+	private final int[] zs = new int[COORDINATES];
+	private CapturedIndex captured;
+	private int next;
+
+	@Setup
+	public void setup() throws IOException {
+		var random = new Random(42);
+		captured = new CapturedIndex(new File(Synthetic.tempDir(), "captured.bin"));
+		for (int i = 0; i < COORDINATES; i++) {
+			xs[i] = random.nextInt(20_000) - 10_000;
+			zs[i] = random.nextInt(20_000) - 10_000;
+			if (random.nextBoolean())
+				captured.set(xs[i], zs[i]);
+		}
+	}
+
+	private int next() {
+		return next = (next + 1) & (COORDINATES - 1);
+	}
+
+	@Benchmark
+	public int index() {
+		int i = next();
+		return Region.index(xs[i], zs[i]);
+	}
+
+	@Benchmark
+	public int shiftIndex() {
+		int i = next();
+		return (zs[i] & 31) << 5 | (xs[i] & 31);
+	}
+
+	@Benchmark
+	public boolean captured() {
+		int i = next();
+		return captured.contains(xs[i], zs[i]);
+	}
+}
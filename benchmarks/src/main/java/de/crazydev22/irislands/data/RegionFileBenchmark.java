@@ -0,0 +1,89 @@
+package de.crazydev22.irislands.data;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Region file encode and decode: full rewrites, journal appends and single slot reads.
+ * Appends include the compactions they trigger, the same way {@link RegionManager} runs them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegionFileBenchmark {
+	@Param({"8192"})
+	public int worldSize;
+	@Param({"2048"})
+	public int mantleSize;
+
+	private File dir;
+	private RegionFile region;
+	private RegionFile journaled;
+	private byte[][] mantle;
+	private byte[][] world;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		var random = new Random(42);
+		dir = Synthetic.tempDir();
+		region = Synthetic.region(new File(dir, "0_0.lz4b"), random, mantleSize, worldSize);
+		mantle = new byte[RegionFile.SLOTS][];
+		world = new byte[RegionFile.SLOTS][];
+		for (int i = 0; i < RegionFile.SLOTS; i++) {
+			mantle[i] = RegionFile.compress(Synthetic.payload(random, mantleSize));
+			world[i] = Synthetic.payload(random, worldSize);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void resetJournal() throws IOException {
+		journaled = Synthetic.region(new File(dir, "1_0.lz4b"), new Random(7), mantleSize, worldSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Synthetic.delete(dir);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@BenchmarkMode(Mode.AverageTime)
+	public void writeFull() throws IOException {
+		RegionFile.empty(new File(dir, "write.lz4b"), Synthetic.CODECS).write(Synthetic.source(mantle, world, i -> true));
+	}
+
+	@Benchmark
+	public void appendSlot() throws IOException {
+		int slot = ThreadLocalRandom.current().nextInt(RegionFile.SLOTS);
+		journaled.append(Synthetic.source(mantle, world, i -> i == slot));
+		if (journaled.needsCompaction())
+			journaled.compact();
+	}
+
+	@Benchmark
+	public byte[] readWorld() throws IOException {
+		return region.readWorld(ThreadLocalRandom.current().nextInt(RegionFile.SLOTS));
+	}
+
+	@Benchmark
+	public byte[] readMantle() throws IOException {
+		return RegionFile.decompress(region.readMantle(ThreadLocalRandom.current().nextInt(RegionFile.SLOTS)));
+	}
+
+	@Benchmark
+	public void readAll(Blackhole blackhole) throws IOException {
+		for (int i = 0; i < RegionFile.SLOTS; i++) {
+			blackhole.consume(region.readMantle(i));
+			blackhole.consume(region.readWorld(i));
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package de.crazydev22.irislands.data;
+
+import de.crazydev22.irislands.codec.Codecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic synthetic payloads that compress roughly like captured chunks: long runs of a
+ * few repeating values with some noise in between.
+ */
+final class Synthetic {
+	static final Codecs CODECS = new Codecs(9);
+
+	private Synthetic() {}
+
+	static byte[] payload(Random random, int size) {
+		byte[] data = new byte[size];
+		int i = 0;
+		while (i < size) {
+			int run = 1 + random.nextInt(64);
+			byte value = (byte) (random.nextInt(8) == 0 ? random.nextInt(256) : random.nextInt(4));
+			for (int end = Math.min(size, i + run); i < end; i++)
+				data[i] = value;
+		}
+		return data;
+	}
+
+	static File tempDir() throws IOException {
+		return Files.createTempDirectory("irislands-bench").toFile();
+	}
+
+	static void delete(File dir) throws IOException {
+		try (Stream<Path> paths = Files.walk(dir.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	/**
+	 * Writes a region file with every slot filled.
+	 */
+	static RegionFile region(File file, Random random, int mantleSize, int worldSize) throws IOException {
+		byte[][] mantle = new byte[RegionFile.SLOTS][];
+		byte[][] world = new byte[RegionFile.SLOTS][];
+		for (int i = 0; i < RegionFile.SLOTS; i++) {
+			mantle[i] = RegionFile.compress(payload(random, mantleSize));
+			world[i] = payload(random, worldSize);
+		}
+		RegionFile.empty(file, CODECS).write(source(mantle, world, i -> true));
+		return new RegionFile(file, CODECS);
+	}
+
+	static RegionFile.Source source(byte[][] mantle, byte[][] world, IntPredicate modified) {
+		return new RegionFile.Source() {
+			@Override
+			public boolean modified(int index) {
+				return modified.test(index);
+			}
+
+			@Override
+			public byte[] mantle(int index) {
+				return mantle[index];
+			}
+
+			@Override
+			public byte[] world(int index) {
+				return world[index];
+			}
+		};
+	}
+}
@@ -0,0 +1,135 @@
+package de.crazydev22.irislands.util;
+
+import com.volmit.iris.engine.data.cache.Cache;
+import com.volmit.iris.util.mantle.Mantle;
+import com.volmit.iris.util.mantle.MantleChunk;
+import com.volmit.iris.util.mantle.TectonicPlate;
+import de.crazydev22.irislands.codec.Codecs;
+import de.crazydev22.irislands.data.RegionFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Mantle chunk handling: the serialize and parse round trip {@code Region.copy} used against
+ * {@link MantleSnapshot}, and reflective plate writes against {@link MantleWrapper}.
+ * Chunks are synthetic with every other section allocated, the mantle lives in a temp folder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("unchecked")
+public class MantleBenchmark {
+	@Param({"24"})
+	public int sections;
+
+	private File dir;
+	private MantleChunk chunk;
+	private byte[] stored;
+	private Mantle mantle;
+	private MantleWrapper wrapper;
+	private Method getPlate;
+	private Field chunks;
+	private final int[] indices = new int[RegionFile.SLOTS];
+	private final MantleChunk[] batch = new MantleChunk[RegionFile.SLOTS];
+
+	@Setup
+	public void setup() throws Exception {
+		chunk = new MantleChunk(sections, 0, 0);
+		for (int s = 0; s < sections; s += 2)
+			chunk.getOrCreate(s);
+		stored = MantleSnapshot.capture(chunk, Codecs.LZ4);
+
+		dir = Files.createTempDirectory("irislands-bench").toFile();
+		mantle = new Mantle(dir, sections << 4);
+		wrapper = new MantleWrapper();
+		getPlate = Mantle.class.getDeclaredMethod("get", int.class, int.class);
+		getPlate.setAccessible(true);
+		chunks = TectonicPlate.class.getDeclaredField("chunks");
+		chunks.setAccessible(true);
+		for (int i = 0; i < RegionFile.SLOTS; i++) {
+			indices[i] = i;
+			batch[i] = chunk;
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		mantle.close();
+	}
+
+	@Benchmark
+	public MantleChunk roundTripCopy() throws IOException, ClassNotFoundException {
+		return parse(write(chunk));
+	}
+
+	@Benchmark
+	public byte[] streamCapture() throws IOException {
+		return RegionFile.compress(write(chunk));
+	}
+
+	@Benchmark
+	public byte[] snapshotCapture() throws IOException {
+		return MantleSnapshot.capture(chunk, Codecs.LZ4);
+	}
+
+	@Benchmark
+	public MantleChunk streamRestore() throws IOException, ClassNotFoundException {
+		return parse(RegionFile.decompress(stored));
+	}
+
+	@Benchmark
+	public MantleChunk snapshotRestore() throws IOException, ClassNotFoundException {
+		return MantleSnapshot.restore(sections, stored, Codecs.LZ4);
+	}
+
+	@Benchmark
+	public void reflectiveSetChunk() throws ReflectiveOperationException {
+		reflectiveSet(7, 9, chunk);
+	}
+
+	@Benchmark
+	public void handleSetChunk() {
+		wrapper.setChunk(mantle, 7, 9, chunk);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void reflectiveRegion() throws ReflectiveOperationException {
+		for (int i = 0; i < RegionFile.SLOTS; i++)
+			reflectiveSet(i & 31, i >> 5, batch[i]);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void handleRegion() {
+		wrapper.setChunks(mantle, 0, 0, indices, batch);
+	}
+
+	private void reflectiveSet(int x, int z, MantleChunk value) throws ReflectiveOperationException {
+		var array = (AtomicReferenceArray<MantleChunk>) chunks.get(getPlate.invoke(mantle, x >> 5, z >> 5));
+		array.set(Cache.to1D(x & 31, z & 31, 0, 32, 32), value);
+	}
+
+	private static byte[] write(MantleChunk chunk) throws IOException {
+		try (var bytes = new ByteArrayOutputStream(); var dos = new DataOutputStream(bytes)) {
+			chunk.write(dos);
+			dos.flush();
+			return bytes.toByteArray();
+		}
+	}
+
+	private MantleChunk parse(byte[] data) throws IOException, ClassNotFoundException {
+		try (var din = new DataInputStream(new ByteArrayInputStream(data))) {
+			return new MantleChunk(sections, din);
+		}
+	}
+}
@@ -1,8 +1,23 @@
 package de.crazydev22.irislands;
 
+import de.crazydev22.irislands.codec.Codecs;
+import de.crazydev22.irislands.codec.DictionaryTrainer;
+import de.crazydev22.irislands.data.BulkJob;
+import de.crazydev22.irislands.data.CaptureQueue;
+import de.crazydev22.irislands.data.Region;
+import de.crazydev22.irislands.data.RegionFlusher;
 import de.crazydev22.irislands.data.RegionManager;
+import de.crazydev22.irislands.data.RegionPrefetcher;
+import de.crazydev22.irislands.metrics.Events;
+import de.crazydev22.irislands.metrics.Metrics;
+import de.crazydev22.irislands.metrics.StatsSource;
+import de.crazydev22.irislands.snapshot.DeltaEngine;
+import de.crazydev22.irislands.snapshot.PaletteEngine;
+import de.crazydev22.irislands.snapshot.SnapshotEngine;
+import de.crazydev22.irislands.snapshot.WorldEditEngine;
+import de.crazydev22.irislands.util.ApplyScheduler;
 import de.crazydev22.irislands.util.Executor;
-import de.crazydev22.irislands.util.ThreadLatch;
+import de.crazydev22.irislands.util.IoExecutor;
 import de.crazydev22.irislands.util.MantleWrapper;
 import lombok.Getter;
 import me.angeschossen.wildregeneration.api.events.chunk.ChunkRegenerateEvent;
@@ -16,156 +31,231 @@ import org.bukkit.entity.Entity;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkPopulateEvent;
 import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import jdk.jfr.FlightRecorder;
 
 @Getter
 public final class IrisLands extends JavaPlugin implements Listener {
+	private static final long DICTIONARY_SAMPLES = 8 << 20;
 	private final ExecutorService service = new Executor("IrisLands", 6);
-	private final ReentrantLock managerLock = new ReentrantLock(true);
+	private ExecutorService io;
 	private final Map<World, RegionManager> managers = new ConcurrentHashMap<>();
+	private final Map<World, CompletableFuture<RegionManager>> opening = new ConcurrentHashMap<>();
+	private final Map<World, BulkJob> jobs = new ConcurrentHashMap<>();
 	private final AtomicBoolean closed = new AtomicBoolean();
-	private ThreadLatch unloadThread;
-	private ThreadLatch trimThread;
+	private Settings settings;
+	private Codecs codecs;
 	private MantleWrapper wrapper;
+	private List<SnapshotEngine> engines;
+	private SnapshotEngine engine;
+	private ApplyScheduler applyScheduler;
+	private CaptureQueue captureQueue;
+	private RegionFlusher flusher;
+	private RegionPrefetcher prefetcher;
+	private final List<StatsSource> statsSources = new CopyOnWriteArrayList<>();
+	private final Runnable statsEvent = this::emitStats;
 
 	@Override
 	public void onEnable() {
+		saveDefaultConfig();
+		settings = new Settings(getConfig());
+		selectCodec();
+		io = IoExecutor.create("IrisLands I/O", settings.getIoThreads(), settings.isIoVirtualThreads(), getLogger());
+		flusher = new RegionFlusher(this, settings.getFlushBatchSize(), settings.getFlushLatency());
+		flusher.start();
+		statsSources.add(flusher);
+		applyScheduler = new ApplyScheduler(this, settings.getApplyBudget());
+		applyScheduler.start();
+		statsSources.add(applyScheduler);
+		if (settings.isGenerationCapture()) {
+			captureQueue = new CaptureQueue(this, settings.getCaptureQueueSize(), settings.getCaptureRate(), settings.getCaptureInFlight());
+			captureQueue.start();
+			statsSources.add(captureQueue);
+		}
+		var worldEditEngine = new WorldEditEngine();
+		var paletteEngine = new PaletteEngine(this, worldEditEngine);
+		var deltaEngine = new DeltaEngine(paletteEngine, settings.getRestoreBatchSize());
+		engines = List.of(deltaEngine, paletteEngine, worldEditEngine);
+		engine = switch (settings.getSnapshotEngine()) {
+			case DELTA -> deltaEngine;
+			case PALETTE -> paletteEngine;
+			case WORLDEDIT -> worldEditEngine;
+		};
 		try {
 			wrapper = new MantleWrapper();
-		} catch (NoSuchMethodException | NoSuchFieldException e) {
+		} catch (ReflectiveOperationException e) {
 			throw new RuntimeException(e);
 		}
+		if (settings.isPrefetch()) {
+			prefetcher = new RegionPrefetcher(this, settings.getPrefetchLookAhead(), settings.getPrefetchInFlight(), settings.getPrefetchWasteAfter());
+			prefetcher.start();
+			statsSources.add(prefetcher);
+		}
 		getServer().getPluginManager().registerEvents(this, this);
+		FlightRecorder.addPeriodicEvent(Events.Stats.class, statsEvent);
 		closed.set(false);
 		Runtime.getRuntime().addShutdownHook(new Thread(this::onDisable));
+		Bukkit.getScheduler().runTask(this, this::resumeJobs);
+	}
 
-		unloadThread = new ThreadLatch(() -> {
-			while (!closed.get()) {
-				long sleep = 1000;
-				for (var manager : managers.values()) {
-					if (manager == null)
-						continue;
-					long time = System.currentTimeMillis();
-					manager.unload();
-					sleep -= System.currentTimeMillis() - time;
-				}
+	/**
+	 * Resumes the bulk jobs left unfinished by the last run, once all worlds are loaded.
+	 */
+	private void resumeJobs() {
+		for (var world : Bukkit.getWorlds()) {
+			if (!new File(world.getWorldFolder(), "backups/bulk.job").exists())
+				continue;
+			getManager(world).thenAccept(manager -> {
 				try {
-					Thread.sleep(Math.max(0, sleep));
-				} catch (InterruptedException ignored) {}
-			}
-		}, "IrisLands unload");
-		unloadThread.setDaemon(true);
-		unloadThread.start();
-
-		trimThread = new ThreadLatch(() -> {
-			while (!closed.get()) {
-				long sleep = 1000;
-				for (var manager : managers.values()) {
-					if (manager == null)
-						continue;
-					long time = System.currentTimeMillis();
-					manager.trim(30*60*1000);
-					sleep -= System.currentTimeMillis() - time;
+					var job = BulkJob.resume(this, manager, getServer().getConsoleSender());
+					if (job != null && startJob(world, job))
+						getLogger().info("Resumed bulk job of world " + world.getName());
+				} catch (Throwable e) {
+					getLogger().log(Level.SEVERE, "Failed to resume bulk job of world " + world.getName(), e);
 				}
-				try {
-					Thread.sleep(Math.max(0, sleep));
-				} catch (InterruptedException ignored) {}
+			});
+		}
+	}
+
+	private boolean startJob(World world, BulkJob job) {
+		if (jobs.putIfAbsent(world, job) != null)
+			return false;
+		job.completion().thenRun(() -> jobs.remove(world, job));
+		job.start();
+		return true;
+	}
+
+	private void selectCodec() {
+		codecs = new Codecs(settings.getCodecLevel());
+		byte[] dictionary = null;
+		try {
+			var dictionaries = codecs.loadDictionaries(getDictionaryFolder());
+			var id = settings.getCodecDictionary();
+			if (id != null && !id.isEmpty()) {
+				dictionary = dictionaries.get(Integer.parseUnsignedInt(id, 16));
+				if (dictionary == null)
+					getLogger().warning("Compression dictionary " + id + " not found, compressing without one");
 			}
-		}, "IrisLands trim");
-		trimThread.setDaemon(true);
-		trimThread.start();
+		} catch (IOException | NumberFormatException e) {
+			getLogger().log(Level.WARNING, "Failed to load compression dictionaries", e);
+		}
+		codecs.select(codecs.create(settings.getCodec(), dictionary));
+	}
+
+	private File getDictionaryFolder() {
+		return new File(getDataFolder(), "dictionaries");
 	}
 
 	@Override
 	public void onDisable() {
 		closed.set(true);
-		if (trimThread != null) {
-			try {
-				trimThread.await();
-			} catch (InterruptedException ignored) {}
-		}
-		if (unloadThread != null) {
-			try {
-				unloadThread.await();
-			} catch (InterruptedException ignored) {}
-		}
-		managerLock.lock();
-		try {
-			for (var manager : managers.values()) {
-				if (manager == null)
-					continue;
-				manager.close();
-			}
-		} finally {
-			managers.clear();
-			managerLock.unlock();
-		}
+		FlightRecorder.removePeriodicEvent(statsEvent);
+		statsSources.clear();
+		jobs.values().forEach(BulkJob::stop);
+		jobs.clear();
+		if (captureQueue != null)
+			captureQueue.stop();
+		if (prefetcher != null)
+			prefetcher.stop();
+		var closing = List.copyOf(managers.values());
+		managers.clear();
+		List<Region> dirty = new ArrayList<>();
+		for (var manager : closing)
+			dirty.addAll(manager.detach());
+		if (flusher != null)
+			flusher.shutdown(dirty, settings.getShutdownParallelism(), settings.getShutdownBudget());
+		closing.parallelStream().forEach(RegionManager::saveCaptured);
+		if (applyScheduler != null)
+			applyScheduler.stop();
 		service.shutdown();
+		if (io != null)
+			io.shutdown();
+		if (codecs != null)
+			codecs.close();
 	}
 
 	@EventHandler
 	public void onWorldUnload(WorldUnloadEvent event) {
+		var job = jobs.remove(event.getWorld());
+		if (job != null)
+			job.stop();
 		var manager = managers.remove(event.getWorld());
-		if (manager != null) {
-			service.submit(() -> {
-				managerLock.lock();
-				try {
-					manager.close();
-				} finally {
-					managerLock.unlock();
-				}
-			});
-		}
+		if (manager != null)
+			io.submit(manager::close);
 	}
 
 	@EventHandler
 	public void onChunkLoad(ChunkLoadEvent event) {
-		getManager(event.getChunk()).thenAccept(manager -> manager.save(event.getChunk(), false));
+		var chunk = event.getChunk();
+		var manager = managers.get(chunk.getWorld());
+		if (manager != null && (manager.isCaptured(chunk.getX(), chunk.getZ()) || manager.isSaving(chunk.getX(), chunk.getZ())))
+			return;
+		if (captureQueue != null && event.isNewChunk() && manager != null && manager.getMantle() != null)
+			return;
+		getManager(chunk).thenAccept(m -> m.save(chunk, false));
+	}
+
+	@EventHandler
+	public void onChunkPopulate(ChunkPopulateEvent event) {
+		if (captureQueue == null)
+			return;
+		var chunk = event.getChunk();
+		int x = chunk.getX(), z = chunk.getZ();
+		getManager(chunk).thenAccept(manager -> {
+			if (manager.getMantle() != null)
+				captureQueue.offer(manager, x, z);
+		});
 	}
 
 	@EventHandler
 	public void onChunkRegenerate(ChunkRegenerateEvent event) {
 		var eventChunk = event.getChunk();
 		event.setCancelled(true);
-		var chunk = eventChunk.getWorld().getWorld().getChunkAt(eventChunk.getX(), eventChunk.getZ());
-		getManager(chunk).thenAccept(manager -> manager.load(chunk, false));
+		int x = eventChunk.getX(), z = eventChunk.getZ();
+		getManager(eventChunk.getWorld().getWorld()).thenAccept(manager -> manager.load(x, z, false));
+	}
+
+	public SnapshotEngine getEngine(byte[] data) {
+		for (var engine : engines) {
+			if (engine.accepts(data))
+				return engine;
+		}
+		throw new IllegalArgumentException("No snapshot engine accepts the payload");
 	}
 
 	private CompletableFuture<RegionManager> getManager(Chunk chunk) {
 		return getManager(chunk.getWorld());
 	}
 
+	/**
+	 * Returns the manager of the world, concurrent callers for a world that is not open yet share one creation.
+	 */
 	private CompletableFuture<RegionManager> getManager(World world) {
 		RegionManager m = managers.get(world);
 		if (m != null)
 			return CompletableFuture.completedFuture(m);
-		CompletableFuture<RegionManager> future = new CompletableFuture<>();
-		service.submit(() -> {
-			RegionManager manager = managers.get(world);
-			if (manager != null) {
-				future.complete(manager);
-				return;
-			}
-			managerLock.lock();
-			try {
-				manager = new RegionManager(this, world);
-				managers.put(world, manager);
-				future.complete(manager);
-			} finally {
-				managerLock.unlock();
-			}
-		});
+		if (closed.get())
+			return CompletableFuture.failedFuture(new IllegalStateException("IrisLands is disabled"));
+		var future = opening.computeIfAbsent(world, w -> CompletableFuture.supplyAsync(() -> managers.computeIfAbsent(w, key -> {
+			if (closed.get())
+				throw new IllegalStateException("IrisLands is disabled");
+			return new RegionManager(this, key);
+		}), io));
+		future.whenComplete((manager, e) -> opening.remove(world, future));
 		return future;
 	}
 
@@ -175,6 +265,26 @@ public final class IrisLands extends JavaPlugin implements Listener {
 			sender.sendMessage("You don't have permission to use this command!");
 			return true;
 		}
+		if (args.length == 1 && args[0].equalsIgnoreCase("drain")) {
+			if (captureQueue == null) {
+				sender.sendMessage("Generation capture is disabled!");
+				return true;
+			}
+			sender.sendMessage("Draining " + captureQueue.size() + " queued captures...");
+			captureQueue.drain().thenRun(() -> sender.sendMessage("Capture queue drained!"));
+			return true;
+		}
+		if ((args.length == 1 || args.length == 2) && args[0].equalsIgnoreCase("stats")) {
+			World world = args.length == 2 ? Bukkit.getWorld(args[1]) : null;
+			if (args.length == 2 && world == null) {
+				sender.sendMessage("World not found!");
+				return true;
+			}
+			sendStats(sender, world);
+			return true;
+		}
+		if (args.length >= 2 && (args[0].equalsIgnoreCase("saveall") || args[0].equalsIgnoreCase("restore") || args[0].equalsIgnoreCase("cancel")))
+			return bulk(sender, args);
 		if (args.length < 2 || args.length > 5)
 			return false;
 
@@ -183,7 +293,7 @@ public final class IrisLands extends JavaPlugin implements Listener {
 			sender.sendMessage("World not found!");
 			return true;
 		}
-		Chunk chunk = getChunk(args);
+		int[] chunk = getChunk(args);
 
 		if (args[0].equalsIgnoreCase("load")) {
 			if (chunk == null) {
@@ -191,8 +301,8 @@ public final class IrisLands extends JavaPlugin implements Listener {
 				return false;
 			}
 			sender.sendMessage("Loading chunk...");
-			getManager(chunk).thenAccept(manager ->
-					manager.load(chunk, args.length != 4 && Boolean.parseBoolean(args[4]))
+			getManager(world).thenAccept(manager ->
+					manager.load(chunk[0], chunk[1], args.length != 4 && Boolean.parseBoolean(args[4]))
 							.thenAccept(changed -> {
 								if (changed) sender.sendMessage("Loaded chunk!");
 								else sender.sendMessage("Chunk already loaded!");
@@ -204,26 +314,152 @@ public final class IrisLands extends JavaPlugin implements Listener {
 				return false;
 			}
 			sender.sendMessage("Saving chunk...");
-			getManager(chunk).thenAccept(manager ->
-							manager.save(chunk, args.length == 4 || Boolean.parseBoolean(args[4]))
+			getManager(world).thenAccept(manager ->
+							manager.save(chunk[0], chunk[1], args.length == 4 || Boolean.parseBoolean(args[4]))
 									.thenAccept(changed -> {
 										if (changed) sender.sendMessage("Saved chunk!");
 										else sender.sendMessage("Chunk already saved!");
 									}));
 			return true;
+		} else if (args[0].equalsIgnoreCase("dictionary")) {
+			sender.sendMessage("Training compression dictionary...");
+			getManager(world).thenAcceptAsync(manager -> {
+				try {
+					var samples = manager.sampleMantle(DICTIONARY_SAMPLES);
+					byte[] dictionary = DictionaryTrainer.train(samples, DictionaryTrainer.MAX_SIZE);
+					if (dictionary.length == 0) {
+						sender.sendMessage("Not enough mantle data to train a dictionary!");
+						return;
+					}
+					int id = codecs.saveDictionary(getDictionaryFolder(), dictionary);
+					sender.sendMessage(String.format("Trained a %d KiB dictionary from %d chunks, set compression.dictionary to '%s' to use it",
+							dictionary.length >> 10, samples.size(), Integer.toHexString(id)));
+				} catch (Throwable e) {
+					getLogger().log(Level.SEVERE, "Failed to train compression dictionary", e);
+					sender.sendMessage("Failed to train dictionary!");
+				}
+			}, io);
+			return true;
 		} else if (args[0].equalsIgnoreCase("clear")) {
-			getManager(world).thenAccept(manager -> {
+			var job = jobs.remove(world);
+			if (job != null) job.cancel();
+			getManager(world).thenAcceptAsync(manager -> {
 				if (manager.clear()) sender.sendMessage("Cleared all regions!");
 				else sender.sendMessage("Nothing to clear!");
-			});
+			}, io);
 		}
 		return false;
 	}
 
-	private Chunk getChunk(String[] args) {
+	private boolean bulk(CommandSender sender, String[] args) {
+		World world = Bukkit.getWorld(args[1]);
+		if (world == null) {
+			sender.sendMessage("World not found!");
+			return true;
+		}
+		if (args[0].equalsIgnoreCase("cancel")) {
+			var job = jobs.remove(world);
+			if (job != null) job.cancel();
+			else sender.sendMessage("No bulk job is running in this world!");
+			return true;
+		}
+
+		BulkJob.Kind kind = BulkJob.Kind.SAVE;
+		BulkJob.Area area = null;
+		if (args[0].equalsIgnoreCase("restore")) {
+			kind = BulkJob.Kind.RESTORE;
+			try {
+				if (args.length == 3) {
+					if (!(sender instanceof Entity entity) || !entity.getWorld().equals(world)) {
+						sender.sendMessage("Use restore <world> <x1> <z1> <x2> <z2> outside of the world!");
+						return true;
+					}
+					var loc = entity.getLocation();
+					area = BulkJob.Area.around(loc.getBlockX() >> 4, loc.getBlockZ() >> 4, Integer.parseInt(args[2]));
+				} else if (args.length == 6) {
+					area = BulkJob.Area.of(Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+							Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+				} else {
+					return false;
+				}
+			} catch (NumberFormatException e) {
+				sender.sendMessage("Invalid chunk coordinates!");
+				return false;
+			}
+		} else if (args.length != 2) {
+			return false;
+		}
+
+		var jobKind = kind;
+		var jobArea = area;
+		getManager(world).thenAccept(manager -> {
+			if (!startJob(world, new BulkJob(this, manager, jobKind, jobArea, sender)))
+				sender.sendMessage("A bulk job is already running in this world, cancel it first!");
+		});
+		return true;
+	}
+
+	private void sendStats(CommandSender sender, @Nullable World world) {
+		List<String> lines = new ArrayList<>();
+		lines.add("IrisLands statistics:");
+		for (var histogram : Metrics.HISTOGRAMS)
+			lines.add(" " + Metrics.format(histogram));
+		lines.add(String.format(" queues: cpu %d, io %d", queued(service), queued(io)));
+		for (var source : statsSources)
+			source.report(lines);
+
+		var selected = world != null ? Collections.singletonList(managers.get(world)) : List.copyOf(managers.values());
+		io.submit(() -> {
+			for (var manager : selected) {
+				if (manager == null) {
+					lines.add(" " + world.getName() + ": not loaded");
+					continue;
+				}
+				var pipeline = manager.getPipeline();
+				lines.add(String.format(" %s: %d regions resident, cache hit ratio %.1f%%, %s on disk, %d restore batches",
+						manager.getWorld().getName(), manager.residentCount(), manager.getStats().hitRate() * 100,
+						Metrics.bytes(manager.diskUsage()), pipeline.getBatches().sum()));
+				if (prefetcher != null) {
+					long issued = manager.getPrefetchIssued().sum(), hits = manager.getPrefetchHits().sum();
+					long cold = hits + manager.getPrefetchMisses().sum();
+					lines.add(String.format("   prefetch: %d regions read, %.1f%% of cold opens hidden, %.1f%% wasted",
+							issued, cold == 0 ? 0 : hits * 100.0 / cold, issued == 0 ? 0 : manager.getPrefetchWasted().sum() * 100.0 / issued));
+				}
+			}
+			Bukkit.getScheduler().runTask(this, () -> lines.forEach(sender::sendMessage));
+		});
+	}
+
+	private void emitStats() {
+		var event = new Events.Stats();
+		if (!event.isEnabled())
+			return;
+		event.cpuQueued = queued(service);
+		event.ioQueued = queued(io);
+		for (var source : statsSources)
+			source.report(event);
+		long requests = 0, hits = 0;
+		for (var manager : managers.values()) {
+			event.regionsResident += manager.residentCount();
+			var stats = manager.getStats();
+			requests += stats.requestCount();
+			hits += stats.hitCount();
+		}
+		event.cacheHitRatio = requests == 0 ? 1 : (double) hits / requests;
+		event.commit();
+	}
+
+	private static long queued(@Nullable ExecutorService executor) {
+		if (executor instanceof ForkJoinPool pool)
+			return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+		if (executor instanceof ThreadPoolExecutor pool)
+			return pool.getQueue().size();
+		return 0;
+	}
+
+	private static int[] getChunk(String[] args) {
 		try {
-			World world = Bukkit.getWorld(args[1]);
-			return world != null ? world.getChunkAt(Integer.parseInt(args[2]), Integer.parseInt(args[3])) : null;
+			return new int[]{Integer.parseInt(args[2]), Integer.parseInt(args[3])};
 		} catch (Throwable ignored) {}
 		return null;
 	}
@@ -237,7 +473,7 @@ public final class IrisLands extends JavaPlugin implements Listener {
 			loc = e.getLocation();
 
 		List<String> list = switch (args.length) {
-			case 1 -> List.of("load", "save", "clear");
+			case 1 -> List.of("load", "save", "saveall", "restore", "cancel", "clear", "dictionary", "drain", "stats");
 			case 2 -> Bukkit.getWorlds().stream().map(World::getName).toList();
 			case 3 -> List.of(loc != null ? String.valueOf(loc.getChunk().getX()) : "0");
 			case 4 -> List.of(loc != null ? String.valueOf(loc.getChunk().getZ()) : "0");
@@ -0,0 +1,75 @@
+package de.crazydev22.irislands;
+
+import de.crazydev22.irislands.codec.Codec;
+import de.crazydev22.irislands.snapshot.SnapshotEngine;
+import lombok.Data;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Locale;
+
+@Data
+public class Settings {
+	private final long cacheBudget;
+	private final long cacheExpiry;
+	private final SnapshotEngine.Type snapshotEngine;
+	private final boolean sectionDedup;
+	private final long sectionCacheSize;
+	private final long sectionCollectInterval;
+	private final boolean generationCapture;
+	private final int captureQueueSize;
+	private final int captureRate;
+	private final int captureInFlight;
+	private final long restoreWindow;
+	private final int restoreBatchSize;
+	private final boolean restoreLog;
+	private final long applyBudget;
+	private final int ioThreads;
+	private final boolean ioVirtualThreads;
+	private final int flushBatchSize;
+	private final long flushLatency;
+	private final Codec.Type codec;
+	private final int codecLevel;
+	private final String codecDictionary;
+	private final int bulkRate;
+	private final int bulkParallelRegions;
+	private final long bulkProgressInterval;
+	private final boolean prefetch;
+	private final double prefetchLookAhead;
+	private final int prefetchInFlight;
+	private final long prefetchWasteAfter;
+	private final int shutdownParallelism;
+	private final long shutdownBudget;
+
+	public Settings(ConfigurationSection config) {
+		cacheBudget = config.getLong("cache.memory-budget-mb", 256) << 20;
+		cacheExpiry = config.getLong("cache.expire-after-access-minutes", 30) * 60_000L;
+		snapshotEngine = SnapshotEngine.Type.valueOf(config.getString("snapshot.engine", "worldedit").toUpperCase(Locale.ROOT));
+		sectionDedup = config.getBoolean("snapshot.deduplicate-sections", false);
+		sectionCacheSize = Math.max(0, config.getLong("sections.cache-size", 8192));
+		sectionCollectInterval = Math.max(1, config.getLong("sections.collect-interval-minutes", 30)) * 60_000L;
+		generationCapture = config.getBoolean("capture.on-generation", false);
+		captureQueueSize = Math.max(1, config.getInt("capture.queue-size", 4096));
+		captureRate = Math.max(1, config.getInt("capture.max-chunks-per-second", 200));
+		captureInFlight = Math.max(1, config.getInt("capture.max-in-flight", 16));
+		restoreWindow = config.getLong("restore.batch-window-ms", 50);
+		restoreBatchSize = Math.max(1, config.getInt("restore.max-batch-size", 64));
+		restoreLog = config.getBoolean("restore.log-batches", false);
+		applyBudget = Math.max(1, config.getLong("apply.tick-budget-ms", 10));
+		ioThreads = Math.max(1, config.getInt("io.threads", 4));
+		ioVirtualThreads = config.getBoolean("io.virtual-threads", false);
+		flushBatchSize = Math.max(1, config.getInt("flush.batch-size", 16));
+		flushLatency = Math.max(0, config.getLong("flush.max-latency-ms", 2000));
+		codec = Codec.Type.byName(config.getString("compression.codec", "lz4"));
+		codecLevel = config.getInt("compression.level", 9);
+		codecDictionary = config.getString("compression.dictionary", "");
+		bulkRate = Math.max(1, config.getInt("bulk.max-chunks-per-second", 100));
+		bulkParallelRegions = Math.max(1, config.getInt("bulk.parallel-regions", 4));
+		bulkProgressInterval = Math.max(1, config.getLong("bulk.progress-interval-seconds", 10));
+		prefetch = config.getBoolean("prefetch.enabled", true);
+		prefetchLookAhead = Math.max(0, config.getDouble("prefetch.look-ahead-seconds", 10));
+		prefetchInFlight = Math.max(1, config.getInt("prefetch.max-in-flight", 2));
+		prefetchWasteAfter = Math.max(1, config.getLong("prefetch.waste-after-seconds", 120));
+		shutdownParallelism = Math.max(1, config.getInt("shutdown.parallel-writes", 4));
+		shutdownBudget = Math.max(1, config.getLong("shutdown.time-budget-seconds", 30)) * 1000L;
+	}
+}
@@ -0,0 +1,72 @@
+package de.crazydev22.irislands.codec;
+
+import de.crazydev22.irislands.metrics.Events;
+import de.crazydev22.irislands.metrics.Metrics;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compresses through a per thread scratch buffer so only the result is allocated, and reports
+ * every call to the compression histogram and JFR event.
+ */
+abstract class AbstractCodec implements Codec {
+	private static final int MAX_SCRATCH = 4 << 20;
+	private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[64 << 10]);
+
+	@Override
+	public final byte[] compress(byte[] data, int offset, int length) {
+		var event = new Events.Compression();
+		event.begin();
+		long start = System.nanoTime();
+		int max = 4 + maxCompressedLength(length);
+		byte[] out = SCRATCH.get();
+		if (out.length < max) {
+			out = new byte[max];
+			if (max <= MAX_SCRATCH)
+				SCRATCH.set(out);
+		}
+		ByteBuffer.wrap(out).putInt(length);
+		int compressed = encode(data, offset, length, out, 4, max - 4);
+		byte[] result = Arrays.copyOf(out, 4 + compressed);
+		Metrics.COMPRESSION.record(System.nanoTime() - start);
+		commit(event, false, length, result.length);
+		return result;
+	}
+
+	@Override
+	public final void decompress(byte[] data, byte[] out) {
+		var event = new Events.Compression();
+		event.begin();
+		int length = Codec.decompressedLength(data);
+		decode(data, 4, data.length - 4, out, length);
+		commit(event, true, data.length, length);
+	}
+
+	protected abstract int maxCompressedLength(int length);
+
+	/**
+	 * @return number of bytes written to {@code out}
+	 */
+	protected abstract int encode(byte[] data, int offset, int length, byte[] out, int outOffset, int maxLength);
+
+	protected abstract void decode(byte[] data, int offset, int length, byte[] out, int rawLength);
+
+	private void commit(Events.Compression event, boolean decompress, int input, int output) {
+		event.end();
+		if (!event.shouldCommit())
+			return;
+		event.codec = type().name();
+		event.decompress = decompress;
+		event.inputSize = input;
+		event.outputSize = output;
+		event.commit();
+	}
+
+	@Override
+	public String toString() {
+		return dictionary() != 0
+				? type().name() + "[" + Integer.toHexString(dictionary()) + "]"
+				: type().name();
+	}
+}
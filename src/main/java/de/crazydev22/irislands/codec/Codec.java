@@ -0,0 +1,99 @@
+package de.crazydev22.irislands.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Block compression for mantle payloads of region files.
+ * <p>
+ * Every codec writes {@code rawLength} followed by its compressed bytes, so the buffer for the result
+ * can be sized before decompressing. The codec of a region file is recorded in its header together
+ * with the id of its preset dictionary, see {@link Codecs#get(int, int)}. Codecs are shared between threads.
+ */
+public interface Codec {
+	Type type();
+
+	/**
+	 * @return id of the preset dictionary, 0 if the codec uses none
+	 */
+	default int dictionary() {
+		return 0;
+	}
+
+	byte[] compress(byte[] data, int offset, int length);
+
+	default byte[] compress(byte[] data) {
+		return compress(data, 0, data.length);
+	}
+
+	/**
+	 * Decompresses into the start of the given buffer, which has to hold at least {@link #decompressedLength(byte[])} bytes.
+	 */
+	void decompress(byte[] data, byte[] out);
+
+	default byte[] decompress(byte[] data) {
+		byte[] out = new byte[decompressedLength(data)];
+		decompress(data, out);
+		return out;
+	}
+
+	/**
+	 * @return whether this codec writes exactly the format of the other one and can read everything it wrote
+	 */
+	default boolean sameFormat(Codec other) {
+		return type() == other.type() && dictionary() == other.dictionary();
+	}
+
+	/**
+	 * @return whether this codec can decompress payloads written by the other one
+	 */
+	default boolean reads(Codec other) {
+		return type().decoder == other.type().decoder && dictionary() == other.dictionary();
+	}
+
+	/**
+	 * Releases native state, called once the codec is no longer used.
+	 */
+	default void close() {}
+
+	/**
+	 * @throws IllegalArgumentException if the payload is too short or records a negative length
+	 */
+	static int decompressedLength(byte[] data) {
+		if (data.length < 4)
+			throw new IllegalArgumentException("Truncated payload of " + data.length + " bytes");
+		int length = ByteBuffer.wrap(data).getInt();
+		if (length < 0)
+			throw new IllegalArgumentException("Corrupt payload length " + length);
+		return length;
+	}
+
+	enum Type {
+		LZ4(0, 0),
+		LZ4_HC(1, 0),
+		DEFLATE(2, 1);
+
+		/**
+		 * Id recorded in region file headers, never reuse one.
+		 */
+		public final int id;
+		private final int decoder;
+
+		Type(int id, int decoder) {
+			this.id = id;
+			this.decoder = decoder;
+		}
+
+		public static Type byId(int id) {
+			for (var type : values()) {
+				if (type.id == id)
+					return type;
+			}
+			throw new IllegalArgumentException("Unknown codec id " + id);
+		}
+
+		public static Type byName(String name) {
+			return valueOf(name.replace('-', '_').toUpperCase(Locale.ROOT));
+		}
+	}
+}
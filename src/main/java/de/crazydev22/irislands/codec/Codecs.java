@@ -0,0 +1,138 @@
+package de.crazydev22.irislands.codec;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Registry of the codecs region files can be read with and the one new payloads are written with.
+ * <p>
+ * Owned by the plugin or the store tool, every codec it creates compresses with the level it was
+ * created with, including the ones looked up for the ids found in file headers.
+ */
+public final class Codecs implements Closeable {
+	/**
+	 * Default codec, also used for payloads that carry their own format like section and palette payloads.
+	 */
+	public static final Codec LZ4 = Lz4Codec.fast();
+	private final Map<Long, Codec> codecs = new ConcurrentHashMap<>();
+	private final int level;
+	private volatile Codec current = LZ4;
+
+	/**
+	 * @param level compression level of every codec created by this registry, clamped to the range of each codec
+	 */
+	public Codecs(int level) {
+		this.level = level;
+		register(LZ4);
+	}
+
+	/**
+	 * @return the codec new payloads are compressed with
+	 */
+	public Codec current() {
+		return current;
+	}
+
+	public void select(Codec codec) {
+		register(codec);
+		current = codec;
+	}
+
+	public void register(Codec codec) {
+		codecs.putIfAbsent(key(codec.type().id, codec.dictionary()), codec);
+	}
+
+	/**
+	 * Looks up a codec by the ids recorded in a region file.
+	 *
+	 * @throws IOException if the codec is unknown or its dictionary is not available
+	 */
+	public Codec get(int type, int dictionary) throws IOException {
+		var codec = codecs.get(key(type, dictionary));
+		if (codec != null)
+			return codec;
+		if (dictionary != 0)
+			throw new IOException("Missing compression dictionary " + Integer.toHexString(dictionary));
+		try {
+			register(create(Codec.Type.byId(type), null));
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		return codecs.get(key(type, dictionary));
+	}
+
+	public Codec create(Codec.Type type, @Nullable byte[] dictionary) {
+		return create(type, level, dictionary);
+	}
+
+	public static Codec create(Codec.Type type, int level, @Nullable byte[] dictionary) {
+		return switch (type) {
+			case LZ4 -> LZ4;
+			case LZ4_HC -> Lz4Codec.high(level);
+			case DEFLATE -> new DeflateCodec(level, dictionary);
+		};
+	}
+
+	public static int dictionaryId(byte[] dictionary) {
+		var crc = new CRC32();
+		crc.update(dictionary);
+		int id = (int) crc.getValue();
+		return id != 0 ? id : 1;
+	}
+
+	/**
+	 * Registers a deflate codec for every {@code <id>.dict} file in the folder.
+	 *
+	 * @return the dictionaries by id
+	 */
+	public Map<Integer, byte[]> loadDictionaries(File folder) throws IOException {
+		Map<Integer, byte[]> dictionaries = new HashMap<>();
+		File[] files = folder.listFiles((dir, name) -> name.endsWith(".dict"));
+		if (files == null)
+			return dictionaries;
+		for (var file : files) {
+			byte[] dictionary = Files.readAllBytes(file.toPath());
+			int id = dictionaryId(dictionary);
+			dictionaries.put(id, dictionary);
+			register(create(Codec.Type.DEFLATE, dictionary));
+		}
+		return dictionaries;
+	}
+
+	/**
+	 * Stores the dictionary as {@code <id>.dict}. Dictionaries are never deleted, region files
+	 * written with one can only be read while it exists.
+	 *
+	 * @return the id of the dictionary
+	 */
+	public int saveDictionary(File folder, byte[] dictionary) throws IOException {
+		int id = dictionaryId(dictionary);
+		if (!folder.exists() && !folder.mkdirs())
+			throw new IOException("Failed to create directory: " + folder);
+		var file = new File(folder, Integer.toHexString(id) + ".dict");
+		if (!file.exists())
+			Files.write(file.toPath(), dictionary);
+		register(create(Codec.Type.DEFLATE, dictionary));
+		return id;
+	}
+
+	/**
+	 * Releases the native state held by the registered codecs.
+	 */
+	@Override
+	public void close() {
+		codecs.values().forEach(Codec::close);
+	}
+
+	private static long key(int type, int dictionary) {
+		return (long) type << 32 | (dictionary & 0xffffffffL);
+	}
+}
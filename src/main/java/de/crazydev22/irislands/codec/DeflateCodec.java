@@ -0,0 +1,114 @@
+package de.crazydev22.irislands.codec;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate with an optional preset dictionary. Mantle chunks are small and share most of their
+ * structure, a dictionary trained from them lets even the first bytes of a chunk refer back to it.
+ * <p>
+ * Deflaters and inflaters hold native zlib state, so a bounded pool of them is shared by all threads
+ * instead of one per thread. Instances that do not fit back into the pool are ended right away.
+ */
+public class DeflateCodec extends AbstractCodec {
+	private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+	private final int level;
+	@Nullable
+	private final byte[] dictionary;
+	private final int dictionaryId;
+	private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+	private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+	private volatile boolean closed;
+
+	/**
+	 * @param level      1 to 9, higher is smaller and slower
+	 * @param dictionary preset dictionary, at most the last 32 KiB are used
+	 */
+	public DeflateCodec(int level, @Nullable byte[] dictionary) {
+		this.level = Math.max(1, Math.min(9, level));
+		this.dictionary = dictionary;
+		this.dictionaryId = dictionary != null ? Codecs.dictionaryId(dictionary) : 0;
+	}
+
+	@Override
+	public Type type() {
+		return Type.DEFLATE;
+	}
+
+	@Override
+	public int dictionary() {
+		return dictionaryId;
+	}
+
+	@Override
+	protected int maxCompressedLength(int length) {
+		// stored blocks add 5 bytes per 16 KiB in the worst case
+		return length + ((length >> 14) + 1) * 5 + 16;
+	}
+
+	@Override
+	protected int encode(byte[] data, int offset, int length, byte[] out, int outOffset, int maxLength) {
+		var deflater = deflaters.poll();
+		if (deflater == null)
+			deflater = new Deflater(level, true);
+		try {
+			if (dictionary != null)
+				deflater.setDictionary(dictionary);
+			deflater.setInput(data, offset, length);
+			deflater.finish();
+			int written = 0;
+			while (!deflater.finished() && written < maxLength)
+				written += deflater.deflate(out, outOffset + written, maxLength - written);
+			if (!deflater.finished())
+				throw new IllegalStateException("Deflate output exceeded its bound");
+			return written;
+		} finally {
+			deflater.reset();
+			if (closed || !deflaters.offer(deflater))
+				deflater.end();
+		}
+	}
+
+	@Override
+	protected void decode(byte[] data, int offset, int length, byte[] out, int rawLength) {
+		var inflater = inflaters.poll();
+		if (inflater == null)
+			inflater = new Inflater(true);
+		try {
+			if (dictionary != null)
+				inflater.setDictionary(dictionary);
+			inflater.setInput(data, offset, length);
+			int read = 0;
+			while (read < rawLength) {
+				int n = inflater.inflate(out, read, rawLength - read);
+				if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				read += n;
+			}
+			if (read != rawLength)
+				throw new IllegalArgumentException("Truncated deflate payload");
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Corrupt deflate payload", e);
+		} finally {
+			inflater.reset();
+			if (closed || !inflaters.offer(inflater))
+				inflater.end();
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		Deflater deflater;
+		while ((deflater = deflaters.poll()) != null)
+			deflater.end();
+		Inflater inflater;
+		while ((inflater = inflaters.poll()) != null)
+			inflater.end();
+	}
+}
@@ -0,0 +1,60 @@
+package de.crazydev22.irislands.codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a preset dictionary from sample payloads out of the segments shared by the most samples.
+ * <p>
+ * Deflate only looks back 32 KiB, so the dictionary is capped there and the most common segments
+ * are placed at its end, where they are reached with the shortest distances.
+ */
+public final class DictionaryTrainer {
+	public static final int MAX_SIZE = 32 << 10;
+	private static final int SEGMENT = 16;
+	private static final int STEP = 4;
+
+	private DictionaryTrainer() {}
+
+	/**
+	 * @param samples uncompressed payloads
+	 * @param size    size of the dictionary, at most {@link #MAX_SIZE}
+	 * @return the dictionary, empty if no segment occurs in more than one sample
+	 */
+	public static byte[] train(List<byte[]> samples, int size) {
+		size = Math.min(size, MAX_SIZE);
+		Map<Segment, int[]> counts = new HashMap<>();
+		Set<Segment> seen = new HashSet<>();
+		for (var sample : samples) {
+			seen.clear();
+			var buffer = ByteBuffer.wrap(sample);
+			for (int i = 0; i + SEGMENT <= sample.length; i += STEP) {
+				var segment = new Segment(buffer.getLong(i), buffer.getLong(i + 8));
+				if (seen.add(segment))
+					counts.computeIfAbsent(segment, k -> new int[1])[0]++;
+			}
+		}
+
+		List<Map.Entry<Segment, int[]>> ranked = new ArrayList<>();
+		for (var entry : counts.entrySet()) {
+			if (entry.getValue()[0] > 1)
+				ranked.add(entry);
+		}
+		ranked.sort((a, b) -> Integer.compare(b.getValue()[0], a.getValue()[0]));
+
+		int segments = Math.min(ranked.size(), size / SEGMENT);
+		var dictionary = ByteBuffer.allocate(segments * SEGMENT);
+		for (int i = segments - 1; i >= 0; i--) {
+			var segment = ranked.get(i).getKey();
+			dictionary.putLong(segment.high).putLong(segment.low);
+		}
+		return dictionary.array();
+	}
+
+	private record Segment(long high, long low) {}
+}
@@ -0,0 +1,61 @@
+package de.crazydev22.irislands.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * LZ4 block format, either the fast compressor or the high compression one. Both write the same
+ * format, so either can read the other. Payloads are decoded with the safe decompressor, which
+ * never reads or writes out of bounds on malformed input.
+ */
+public class Lz4Codec extends AbstractCodec {
+	private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+
+	private final Type type;
+	private final LZ4Compressor compressor;
+
+	private Lz4Codec(Type type, LZ4Compressor compressor) {
+		this.type = type;
+		this.compressor = compressor;
+	}
+
+	public static Lz4Codec fast() {
+		return new Lz4Codec(Type.LZ4, LZ4Factory.fastestInstance().fastCompressor());
+	}
+
+	/**
+	 * @param level 1 to 17, higher is smaller and slower
+	 */
+	public static Lz4Codec high(int level) {
+		return new Lz4Codec(Type.LZ4_HC, LZ4Factory.fastestInstance().highCompressor(Math.max(1, Math.min(17, level))));
+	}
+
+	@Override
+	public Type type() {
+		return type;
+	}
+
+	@Override
+	protected int maxCompressedLength(int length) {
+		return compressor.maxCompressedLength(length);
+	}
+
+	@Override
+	protected int encode(byte[] data, int offset, int length, byte[] out, int outOffset, int maxLength) {
+		return compressor.compress(data, offset, length, out, outOffset, maxLength);
+	}
+
+	@Override
+	protected void decode(byte[] data, int offset, int length, byte[] out, int rawLength) {
+		int decoded;
+		try {
+			decoded = DECOMPRESSOR.decompress(data, offset, length, out, 0, rawLength);
+		} catch (LZ4Exception e) {
+			throw new IllegalArgumentException("Corrupt LZ4 payload", e);
+		}
+		if (decoded != rawLength)
+			throw new IllegalArgumentException("Truncated LZ4 payload");
+	}
+}
@@ -0,0 +1,379 @@
+package de.crazydev22.irislands.data;
+
+import com.volmit.iris.util.documentation.ChunkCoordinates;
+import com.volmit.iris.util.documentation.RegionCoordinates;
+import de.crazydev22.irislands.IrisLands;
+import lombok.Getter;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+/**
+ * Saves every generated chunk of a world or restores every captured chunk of an area.
+ * <p>
+ * Work is split by region and regions are processed in parallel. Saves are started chunk by chunk
+ * at most at the configured rate. Restores are started a region at a time, so the restore pipeline
+ * applies them in region batches, and the next region waits until the rate is met on average.
+ * Finished regions are recorded in {@code backups/bulk.job}, a job found there is resumed with
+ * the next start of the server.
+ * <p>
+ * Layout: {@code magic, version, kind, whole, minX, minZ, maxX, maxZ, count} followed by one
+ * {@code x, z} per finished region.
+ */
+public class BulkJob implements Runnable {
+	private static final int MAGIC = 0x494C424A; // ILBJ
+	private static final int VERSION = 1;
+	private static final Pattern MCA = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+
+	private final IrisLands plugin;
+	@Getter
+	private final RegionManager manager;
+	@Getter
+	private final Kind kind;
+	@Nullable
+	private final Area area;
+	private final CommandSender sender;
+	private final File file;
+	private final Set<Long> finished = ConcurrentHashMap.newKeySet();
+	private final LongAdder done = new LongAdder();
+	private final LongAdder changed = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+	private volatile long total;
+	private volatile long started;
+	private volatile boolean stopped;
+	private volatile boolean cancelled;
+	private Thread thread;
+
+	/**
+	 * @param area chunks to work on, null for every generated chunk of the world
+	 */
+	public BulkJob(IrisLands plugin, RegionManager manager, Kind kind, @Nullable Area area, CommandSender sender) {
+		this.plugin = plugin;
+		this.manager = manager;
+		this.kind = kind;
+		this.area = area;
+		this.sender = sender;
+		this.file = file(manager);
+	}
+
+	/**
+	 * Restores the job a previous run of the server left unfinished.
+	 *
+	 * @return null if the world has none
+	 */
+	@Nullable
+	public static BulkJob resume(IrisLands plugin, RegionManager manager, CommandSender sender) throws IOException {
+		var file = file(manager);
+		if (!file.exists())
+			return null;
+		try (var din = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (din.readInt() != MAGIC)
+				throw new IOException("Not a bulk job: " + file);
+			int version = din.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported bulk job version " + version + ": " + file);
+			var kind = Kind.values()[din.readByte()];
+			boolean whole = din.readBoolean();
+			var area = new Area(din.readInt(), din.readInt(), din.readInt(), din.readInt());
+			var job = new BulkJob(plugin, manager, kind, whole ? null : area, sender);
+			int count = din.readInt();
+			for (int i = 0; i < count; i++)
+				job.finished.add(pack(din.readInt(), din.readInt()));
+			return job;
+		}
+	}
+
+	private static File file(RegionManager manager) {
+		return new File(manager.getDataFolder(), "bulk.job");
+	}
+
+	public void start() {
+		started = System.nanoTime();
+		try {
+			saveState();
+		} catch (IOException e) {
+			plugin.getLogger().log(Level.WARNING, "Failed to save bulk job, it will not be resumed after a restart", e);
+		}
+		thread = new Thread(this, "IrisLands Bulk " + manager.getWorld().getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the job and keeps its progress, it is resumed with the next start of the server.
+	 */
+	public void stop() {
+		stopped = true;
+		if (thread != null)
+			thread.interrupt();
+	}
+
+	/**
+	 * Stops the job and forgets its progress.
+	 */
+	public void cancel() {
+		cancelled = true;
+		stop();
+	}
+
+	public CompletableFuture<Void> completion() {
+		return completion;
+	}
+
+	@Override
+	public void run() {
+		int parallel = plugin.getSettings().getBulkParallelRegions();
+		var regions = new Semaphore(parallel);
+		long interval = 1_000_000_000L / plugin.getSettings().getBulkRate();
+		long reportInterval = TimeUnit.SECONDS.toNanos(plugin.getSettings().getBulkProgressInterval());
+		try {
+			var plan = plan();
+			total = plan.stream().mapToLong(region -> region.chunks.length).sum();
+			message(String.format("%s %d chunks in %d regions of world %s...",
+					kind == Kind.SAVE ? "Saving" : "Restoring", total, plan.size(), manager.getWorld().getName()));
+
+			long next = System.nanoTime();
+			long report = next + reportInterval;
+			for (var region : plan) {
+				regions.acquire();
+				int step = kind == Kind.RESTORE ? region.chunks.length : 1;
+				List<CompletableFuture<?>> futures = new ArrayList<>(region.chunks.length);
+				for (int i = 0; i < region.chunks.length; i++) {
+					if (i % step == 0) {
+						long now = System.nanoTime();
+						if (next > now) {
+							LockSupport.parkNanos(next - now);
+							if (Thread.interrupted())
+								throw new InterruptedException();
+							now = System.nanoTime();
+						}
+						next = Math.max(next, now) + interval * step;
+						if (now >= report) {
+							report = now + reportInterval;
+							message(progress());
+						}
+					}
+					long chunk = region.chunks[i];
+					futures.add(process((int) (chunk >> 32), (int) chunk));
+				}
+				CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).whenComplete((v, e) -> {
+					if (!stopped)
+						finish(region);
+					regions.release();
+				});
+			}
+			regions.acquire(parallel);
+			if (!stopped) {
+				Files.deleteIfExists(file.toPath());
+				message(String.format("Finished %s world %s: %d of %d chunks changed, %d failed, took %s",
+						kind == Kind.SAVE ? "saving" : "restoring", manager.getWorld().getName(),
+						changed.sum(), done.sum(), failed.sum(), duration(System.nanoTime() - started)));
+			}
+		} catch (InterruptedException ignored) {
+		} catch (Throwable e) {
+			plugin.getLogger().log(Level.SEVERE, "Bulk job of world " + manager.getWorld().getName() + " failed", e);
+			message("Bulk job failed, see the console for details!");
+		} finally {
+			if (cancelled) {
+				forget();
+				message("Cancelled bulk job of world " + manager.getWorld().getName() + " at " + progress());
+			}
+			completion.complete(null);
+		}
+	}
+
+	private CompletableFuture<?> process(int x, int z) {
+		var future = kind == Kind.SAVE ? manager.save(x, z, false) : manager.load(x, z, false);
+		return future.handle((result, e) -> {
+			done.increment();
+			if (e != null) failed.increment();
+			else if (result) changed.increment();
+			return null;
+		});
+	}
+
+	private void finish(RegionPlan region) {
+		finished.add(pack(region.x, region.z));
+		try {
+			saveState();
+		} catch (IOException e) {
+			plugin.getLogger().log(Level.WARNING, "Failed to save progress of bulk job " + file, e);
+		}
+	}
+
+	public String progress() {
+		long done = this.done.sum();
+		long total = this.total;
+		double seconds = (System.nanoTime() - started) / 1e9;
+		double rate = seconds > 0 ? done / seconds : 0;
+		String eta = rate > 0 ? duration((long) ((total - done) / rate * 1e9)) : "unknown";
+		return String.format("%d/%d chunks (%.1f%%), %.0f chunks/s, ETA %s",
+				done, total, total > 0 ? done * 100.0 / total : 100, rate, eta);
+	}
+
+	private void message(String message) {
+		sender.sendMessage(message);
+		if (sender != plugin.getServer().getConsoleSender())
+			plugin.getLogger().info(message);
+	}
+
+	private static String duration(long nanos) {
+		long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+		return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+	}
+
+	/**
+	 * Lists the chunks of every region not finished yet, generated chunks when saving and captured ones when restoring.
+	 */
+	private List<RegionPlan> plan() throws IOException {
+		List<RegionPlan> plan = new ArrayList<>();
+		if (kind == Kind.SAVE) {
+			File[] files = regionFolder(manager.getWorld()).listFiles();
+			if (files == null)
+				return plan;
+			for (var file : files) {
+				var matcher = MCA.matcher(file.getName());
+				if (!matcher.matches())
+					continue;
+				int rx = Integer.parseInt(matcher.group(1)), rz = Integer.parseInt(matcher.group(2));
+				if (finished.contains(pack(rx, rz)))
+					continue;
+				var chunks = generated(file, rx, rz);
+				if (chunks.length > 0)
+					plan.add(new RegionPlan(rx, rz, chunks));
+			}
+		} else {
+			var area = this.area != null ? this.area : new Area(0, 0, 0, 0);
+			for (int rx = area.minX >> 5; rx <= area.maxX >> 5; rx++) {
+				for (int rz = area.minZ >> 5; rz <= area.maxZ >> 5; rz++) {
+					if (finished.contains(pack(rx, rz)))
+						continue;
+					// the captured index misses backups written before it existed, so look at the region header too
+					var path = new File(manager.getDataFolder(), rx + "_" + rz + ".lz4b");
+					var regionFile = path.exists() && !RegionMigrator.isLegacy(path) ? new RegionFile(path, plugin.getCodecs()) : null;
+					List<Long> chunks = new ArrayList<>();
+					for (int x = Math.max(area.minX, rx << 5); x <= Math.min(area.maxX, (rx << 5) + 31); x++) {
+						for (int z = Math.max(area.minZ, rz << 5); z <= Math.min(area.maxZ, (rz << 5) + 31); z++) {
+							if (manager.isCaptured(x, z) || regionFile != null && regionFile.hasWorld(Region.index(x, z)))
+								chunks.add(pack(x, z));
+						}
+					}
+					if (!chunks.isEmpty())
+						plan.add(new RegionPlan(rx, rz, chunks.stream().mapToLong(Long::longValue).toArray()));
+				}
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * Reads the chunk locations from the header of an Anvil region file, chunks without one were never generated.
+	 */
+	@RegionCoordinates
+	private long[] generated(File file, int rx, int rz) throws IOException {
+		byte[] header = new byte[4096];
+		try (var in = new FileInputStream(file)) {
+			if (in.readNBytes(header, 0, header.length) != header.length)
+				return new long[0];
+		}
+		var buffer = ByteBuffer.wrap(header);
+		List<Long> chunks = new ArrayList<>();
+		for (int i = 0; i < 1024; i++) {
+			if (buffer.getInt(i << 2) == 0)
+				continue;
+			int x = (rx << 5) + (i & 31), z = (rz << 5) + (i >> 5);
+			if ((area == null || area.contains(x, z)) && !manager.isCaptured(x, z))
+				chunks.add(pack(x, z));
+		}
+		return chunks.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	private static File regionFolder(World world) {
+		return switch (world.getEnvironment()) {
+			case NETHER -> new File(world.getWorldFolder(), "DIM-1/region");
+			case THE_END -> new File(world.getWorldFolder(), "DIM1/region");
+			default -> new File(world.getWorldFolder(), "region");
+		};
+	}
+
+	private synchronized void forget() {
+		try {
+			Files.deleteIfExists(file.toPath());
+		} catch (IOException e) {
+			plugin.getLogger().log(Level.WARNING, "Failed to delete bulk job " + file, e);
+		}
+	}
+
+	private synchronized void saveState() throws IOException {
+		if (cancelled)
+			return;
+		var parent = file.getParentFile();
+		if (!parent.exists() && !parent.mkdirs())
+			throw new IOException("Failed to create directory: " + parent);
+		var temp = new File(file.getPath() + ".tmp");
+		var area = this.area != null ? this.area : new Area(0, 0, 0, 0);
+		try (var dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeByte(kind.ordinal());
+			dos.writeBoolean(this.area == null);
+			dos.writeInt(area.minX);
+			dos.writeInt(area.minZ);
+			dos.writeInt(area.maxX);
+			dos.writeInt(area.maxZ);
+			var regions = List.copyOf(finished);
+			dos.writeInt(regions.size());
+			for (long key : regions) {
+				dos.writeInt((int) (key >> 32));
+				dos.writeInt((int) key);
+			}
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static long pack(int x, int z) {
+		return (long) x << 32 | (z & 0xffffffffL);
+	}
+
+	public enum Kind {
+		SAVE,
+		RESTORE
+	}
+
+	/**
+	 * Inclusive chunk bounds.
+	 */
+	@ChunkCoordinates
+	public record Area(int minX, int minZ, int maxX, int maxZ) {
+		public static Area of(int x1, int z1, int x2, int z2) {
+			return new Area(Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2), Math.max(z1, z2));
+		}
+
+		public static Area around(int x, int z, int radius) {
+			return new Area(x - radius, z - radius, x + radius, z + radius);
+		}
+
+		public boolean contains(int x, int z) {
+			return x >= minX && x <= maxX && z >= minZ && z <= maxZ;
+		}
+	}
+
+	private record RegionPlan(int x, int z, long[] chunks) {}
+}
@@ -0,0 +1,159 @@
+package de.crazydev22.irislands.data;
+
+import com.volmit.iris.util.documentation.ChunkCoordinates;
+import de.crazydev22.irislands.IrisLands;
+import de.crazydev22.irislands.metrics.Events;
+import de.crazydev22.irislands.metrics.StatsSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Bounded background queue for captures of freshly generated chunks.
+ * <p>
+ * Offers never block, once the queue is full further chunks are rejected and left for
+ * their next load. Captures are started at most at the configured rate with a limited
+ * number in flight, {@link #drain()} lifts the rate limit until the queue is empty.
+ */
+public class CaptureQueue implements Runnable, StatsSource {
+	private final IrisLands plugin;
+	private final BlockingQueue<Request> queue;
+	private final Semaphore inFlight;
+	private final long interval;
+	private final AtomicInteger pending = new AtomicInteger();
+	private final List<CompletableFuture<Void>> drains = new ArrayList<>();
+	private final LongAdder queued = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder captured = new LongAdder();
+	private volatile boolean draining;
+	private Thread thread;
+
+	public CaptureQueue(IrisLands plugin, int capacity, int chunksPerSecond, int maxInFlight) {
+		this.plugin = plugin;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.inFlight = new Semaphore(maxInFlight);
+		this.interval = 1_000_000_000L / chunksPerSecond;
+	}
+
+	public void start() {
+		thread = new Thread(this, "IrisLands Capture");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		if (thread != null)
+			thread.interrupt();
+		queue.clear();
+		pending.set(0);
+		completeDrains();
+	}
+
+	/**
+	 * Queues a capture without blocking.
+	 *
+	 * @return false if the queue is full
+	 */
+	@ChunkCoordinates
+	public boolean offer(RegionManager manager, int x, int z) {
+		pending.incrementAndGet();
+		if (queue.offer(new Request(manager, x, z))) {
+			queued.increment();
+			return true;
+		}
+		done();
+		rejected.increment();
+		return false;
+	}
+
+	public int size() {
+		return queue.size();
+	}
+
+	/**
+	 * Runs the queued captures without rate limit, for example while pregenerating.
+	 *
+	 * @return completes once the queue is empty and no capture is running
+	 */
+	public CompletableFuture<Void> drain() {
+		var future = new CompletableFuture<Void>();
+		synchronized (drains) {
+			drains.add(future);
+			draining = true;
+		}
+		if (pending.get() == 0)
+			completeDrains();
+		return future;
+	}
+
+	@Override
+	public void report(List<String> lines) {
+		lines.add(String.format(" generation capture: %d waiting, %d queued, %d rejected, %d captured",
+				size(), queued.sum(), rejected.sum(), captured.sum()));
+	}
+
+	@Override
+	public void report(Events.Stats event) {
+		event.captureQueued = size();
+		event.captureOffered = queued.sum();
+		event.captureRejected = rejected.sum();
+		event.captureDone = captured.sum();
+	}
+
+	@Override
+	public void run() {
+		long next = System.nanoTime();
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				var request = queue.take();
+				long now = System.nanoTime();
+				if (!draining && next > now) {
+					LockSupport.parkNanos(next - now);
+					now = System.nanoTime();
+				}
+				next = Math.max(next, now) + interval;
+
+				inFlight.acquire();
+				if (request.manager.getClosed().get()) {
+					inFlight.release();
+					done();
+					continue;
+				}
+				request.manager.save(request.x, request.z, false).whenComplete((changed, e) -> {
+					inFlight.release();
+					if (e == null)
+						captured.increment();
+					done();
+				});
+			}
+		} catch (InterruptedException ignored) {
+		} catch (Throwable e) {
+			plugin.getLogger().log(Level.SEVERE, "Capture queue stopped", e);
+		}
+	}
+
+	private void done() {
+		if (pending.decrementAndGet() <= 0 && draining)
+			completeDrains();
+	}
+
+	private void completeDrains() {
+		List<CompletableFuture<Void>> completed;
+		synchronized (drains) {
+			completed = new ArrayList<>(drains);
+			drains.clear();
+			draining = false;
+		}
+		completed.forEach(future -> future.complete(null));
+	}
+
+	private record Request(RegionManager manager, int x, int z) {}
+}
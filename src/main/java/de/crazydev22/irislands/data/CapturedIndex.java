@@ -0,0 +1,197 @@
+package de.crazydev22.irislands.data;
+
+import com.volmit.iris.util.documentation.ChunkCoordinates;
+import de.crazydev22.irislands.util.AtomicBitSet;
+import lombok.Getter;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Per world bitmap of the chunks that already have a backup, used to skip chunk loads
+ * without opening their region.
+ * <p>
+ * Regions are kept in an open addressing table that is only locked for inserts, lookups
+ * do not lock or allocate. Every region has a live bitmap, which includes captures that are
+ * still in memory, and a durable one that is only updated once its region file was written.
+ * Only the durable bitmap is persisted, so a crash can never mark a chunk whose backup was lost.
+ * <p>
+ * Layout: {@code magic, version, count} followed by {@code x, z, words} per region.
+ */
+public class CapturedIndex {
+	private static final int MAGIC = 0x494C4349; // ILCI
+	private static final int VERSION = 1;
+	private static final int WORDS = RegionFile.SLOTS >> 6;
+
+	@Getter
+	private final File file;
+	private final AtomicBoolean dirty = new AtomicBoolean();
+	private volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<>(64);
+	private int size;
+
+	public CapturedIndex(File file) throws IOException {
+		this.file = file;
+		if (file.exists())
+			read();
+	}
+
+	private void read() throws IOException {
+		try (var din = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (din.readInt() != MAGIC)
+				throw new IOException("Not a captured index: " + file);
+			int version = din.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported captured index version " + version + ": " + file);
+			int count = din.readInt();
+			for (int i = 0; i < count; i++) {
+				var entry = entry(din.readInt(), din.readInt());
+				for (int w = 0; w < WORDS; w++) {
+					long word = din.readLong();
+					entry.live.setWord(w, word);
+					entry.durable.setWord(w, word);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lock and allocation free, safe to call from any thread.
+	 */
+	@ChunkCoordinates
+	public boolean contains(int x, int z) {
+		var entry = find(table, x >> 5, z >> 5);
+		return entry != null && entry.live.get(Region.index(x, z));
+	}
+
+	@ChunkCoordinates
+	public void set(int x, int z) {
+		entry(x >> 5, z >> 5).live.set(Region.index(x, z));
+	}
+
+	@ChunkCoordinates
+	public void clear(int x, int z) {
+		var entry = find(table, x >> 5, z >> 5);
+		if (entry != null)
+			entry.live.clear(Region.index(x, z));
+	}
+
+	/**
+	 * Records the state of a slot after its region file was written.
+	 */
+	public void commit(int regionX, int regionZ, int index, boolean captured) {
+		var entry = entry(regionX, regionZ);
+		if (captured ? entry.durable.set(index) : entry.durable.clear(index))
+			dirty.set(true);
+	}
+
+	/**
+	 * Writes the durable bitmaps if they changed since the last save.
+	 */
+	public synchronized void save() throws IOException {
+		if (!dirty.getAndSet(false))
+			return;
+		try {
+			var parent = file.getParentFile();
+			if (!parent.exists() && !parent.mkdirs())
+				throw new IOException("Failed to create directory: " + parent);
+			var temp = new File(file.getPath() + ".tmp");
+			var table = this.table;
+			try (var dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				int count = 0;
+				for (int i = 0; i < table.length(); i++) {
+					var entry = table.get(i);
+					if (entry != null && !entry.durable.isEmpty())
+						count++;
+				}
+				dos.writeInt(MAGIC);
+				dos.writeInt(VERSION);
+				dos.writeInt(count);
+				for (int i = 0; i < table.length(); i++) {
+					var entry = table.get(i);
+					if (entry == null || entry.durable.isEmpty())
+						continue;
+					dos.writeInt(entry.x);
+					dos.writeInt(entry.z);
+					for (int w = 0; w < WORDS; w++)
+						dos.writeLong(entry.durable.getWord(w));
+				}
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (Throwable e) {
+			dirty.set(true);
+			throw e;
+		}
+	}
+
+	/**
+	 * Forgets all chunks, the file itself is removed together with the backups folder.
+	 */
+	public synchronized void clear() {
+		table = new AtomicReferenceArray<>(64);
+		size = 0;
+		dirty.set(false);
+	}
+
+	private Entry entry(int x, int z) {
+		var entry = find(table, x, z);
+		if (entry != null)
+			return entry;
+		synchronized (this) {
+			entry = find(table, x, z);
+			if (entry != null)
+				return entry;
+			if ((size + 1) << 1 > table.length())
+				table = grow(table);
+			entry = new Entry(x, z);
+			insert(table, entry);
+			size++;
+			return entry;
+		}
+	}
+
+	private static Entry find(AtomicReferenceArray<Entry> table, int x, int z) {
+		int mask = table.length() - 1;
+		for (int i = hash(x, z) & mask; ; i = (i + 1) & mask) {
+			var entry = table.get(i);
+			if (entry == null || entry.x == x && entry.z == z)
+				return entry;
+		}
+	}
+
+	private static void insert(AtomicReferenceArray<Entry> table, Entry entry) {
+		int mask = table.length() - 1;
+		int i = hash(entry.x, entry.z) & mask;
+		while (table.get(i) != null)
+			i = (i + 1) & mask;
+		table.set(i, entry);
+	}
+
+	private static AtomicReferenceArray<Entry> grow(AtomicReferenceArray<Entry> table) {
+		var grown = new AtomicReferenceArray<Entry>(table.length() << 1);
+		for (int i = 0; i < table.length(); i++) {
+			var entry = table.get(i);
+			if (entry != null)
+				insert(grown, entry);
+		}
+		return grown;
+	}
+
+	private static int hash(int x, int z) {
+		int h = x * 0x9E3779B9 ^ z * 0x85EBCA6B;
+		return h ^ h >>> 16;
+	}
+
+	private static final class Entry {
+		private final int x, z;
+		private final AtomicBitSet live = new AtomicBitSet(RegionFile.SLOTS);
+		private final AtomicBitSet durable = new AtomicBitSet(RegionFile.SLOTS);
+
+		private Entry(int x, int z) {
+			this.x = x;
+			this.z = z;
+		}
+	}
+}
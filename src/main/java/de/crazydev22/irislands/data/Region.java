@@ -1,197 +1,337 @@
 package de.crazydev22.irislands.data;
 
-import com.sk89q.worldedit.WorldEdit;
-import com.sk89q.worldedit.bukkit.BukkitWorld;
-import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
-import com.sk89q.worldedit.extent.clipboard.Clipboard;
-import com.sk89q.worldedit.extent.clipboard.io.BuiltInClipboardFormat;
-import com.sk89q.worldedit.function.operation.ForwardExtentCopy;
-import com.sk89q.worldedit.function.operation.Operations;
-import com.sk89q.worldedit.math.BlockVector3;
-import com.sk89q.worldedit.regions.CuboidRegion;
-import com.sk89q.worldedit.session.ClipboardHolder;
 import com.volmit.iris.engine.data.cache.Cache;
 import com.volmit.iris.util.mantle.MantleChunk;
 import com.volmit.iris.util.parallel.HyperLock;
+import de.crazydev22.irislands.snapshot.SnapshotEngine;
+import de.crazydev22.irislands.util.AtomicBitSet;
+import de.crazydev22.irislands.util.MantleSnapshot;
 import de.crazydev22.irislands.util.MantleWrapper;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
-import net.jpountz.lz4.LZ4BlockInputStream;
-import net.jpountz.lz4.LZ4BlockOutputStream;
 import org.bukkit.Chunk;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
-import java.util.Base64;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 @Data
 public class Region {
-	private final AtomicReferenceArray<MantleChunk> mantleChunks = new AtomicReferenceArray<>(1024);
-	private final AtomicReferenceArray<String> worldChunks = new AtomicReferenceArray<>(1024);
+	private static final int BASE_WEIGHT = 64 << 10;
+	/**
+	 * Slots are kept in their stored form, compressed mantle data and FAST clipboard bytes,
+	 * and only decoded while a chunk is restored.
+	 */
+	private final AtomicReferenceArray<byte[]> mantleChunks = new AtomicReferenceArray<>(1024);
+	private final AtomicReferenceArray<byte[]> worldChunks = new AtomicReferenceArray<>(1024);
+	private final AtomicBitSet loaded = new AtomicBitSet(1024);
+	private final AtomicBitSet dirty = new AtomicBitSet(1024);
 	@ToString.Exclude
 	@EqualsAndHashCode.Exclude
 	private final RegionManager manager;
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	private final RegionFile file;
 	private final HyperLock hyperLock = new HyperLock();
-	private long lastUse = System.currentTimeMillis();
 	private final int x, z;
+	private final int generation;
 
 	public Region(RegionManager manager, int x, int z) {
 		this.manager = manager;
 		this.x = x;
 		this.z = z;
+		this.generation = manager.getGeneration();
 
-		var file = manager.getFile(x, z);
-		if (!file.exists()) return;
-		try (var din = new DataInputStream(new LZ4BlockInputStream(new FileInputStream(file)))) {
-			for (int i = 0; i < 1024; i++) {
-				if (din.readBoolean() && manager.getMantle() != null)
-					mantleChunks.set(i, new MantleChunk(manager.getMantle().getWorldHeight() >> 4, din));
-				if (din.readBoolean())
-					worldChunks.set(i, din.readUTF());
+		var path = manager.getFile(x, z);
+		try {
+			if (RegionMigrator.isLegacy(path)) {
+				int dropped = RegionMigrator.migrate(path, manager.getMantle(), manager.getPlugin().getCodecs());
+				if (dropped > 0)
+					manager.getPlugin().getLogger().warning("Dropped " + dropped + " chunks outside of region " + x + ", " + z + " while migrating " + path);
 			}
+			file = new RegionFile(path, manager.getPlugin().getCodecs());
 		} catch (Throwable e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	public boolean load(Chunk chunk, boolean delete) {
-		lastUse = System.currentTimeMillis();
+	private void read(int index) throws IOException {
+		if (loaded.get(index))
+			return;
+		install(index, file.read(index));
+	}
+
+	private void install(int index, @Nullable RegionFile.Slot slot) {
+		if (loaded.get(index))
+			return;
+		if (slot != null) {
+			if (manager.getMantle() != null)
+				mantleChunks.set(index, slot.mantle());
+			worldChunks.set(index, slot.world());
+		}
+		loaded.set(index);
+	}
+
+	/**
+	 * Reads the given slots on the executor unless they are loaded already, all of them with one {@link RegionFile#read(int[])}.
+	 */
+	public CompletableFuture<Region> preload(int[] indices, Executor executor) {
+		boolean missing = false;
+		for (int index : indices)
+			missing |= !loaded.get(index);
+		if (!missing)
+			return CompletableFuture.completedFuture(this);
+		return CompletableFuture.supplyAsync(() -> {
+			int[] pending = Arrays.stream(indices).filter(index -> !loaded.get(index)).toArray();
+			RegionFile.Slot[] slots;
+			try {
+				slots = file.read(pending);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			for (int i = 0; i < pending.length; i++) {
+				int index = pending[i];
+				var slot = slots[i];
+				hyperLock.withLong(index, () -> install(index, slot));
+			}
+			return this;
+		}, executor);
+	}
+
+	/**
+	 * @return the slots stored in the region file that were not read yet
+	 */
+	public int[] stored() {
+		int count = 0;
+		int[] indices = new int[1024];
+		for (int i = 0; i < indices.length; i++) {
+			if (!loaded.get(i) && (file.hasMantle(i) || file.hasWorld(i)))
+				indices[count++] = i;
+		}
+		return Arrays.copyOf(indices, count);
+	}
+
+	/**
+	 * Decodes the mantle and looks up the block payload of a chunk. The mantle chunk is not installed,
+	 * callers write all mantle chunks of a batch with one {@link MantleWrapper#setChunks} call.
+	 */
+	public Prepared prepare(Chunk chunk, boolean delete) throws IOException {
 		int index = index(chunk.getX(), chunk.getZ());
-		AtomicBoolean changed = new AtomicBoolean(false);
+		AtomicReference<Prepared> prepared = new AtomicReference<>();
+		AtomicReference<Throwable> error = new AtomicReference<>();
 		hyperLock.withLong(index, () -> {
-			chunk.addPluginChunkTicket(manager.getPlugin());
 			try {
+				read(index);
 				var mantle = manager.getMantle();
+				MantleChunk mantleChunk = null;
 				if (mantle != null) {
-					var mantleChunk = mantleChunks.get(index);
-					getWrapper().setChunk(mantle, chunk.getX(), chunk.getZ(), mantleChunk);
-					if (delete) mantleChunks.set(index, null);
-					changed.set(true);
-				}
-
-				var worldChunk = worldChunks.get(index);
-				if (worldChunk != null) {
-					try (var editSession = WorldEdit.getInstance().newEditSession(new BukkitWorld(chunk.getWorld()))) {
-						var operation = new ClipboardHolder(fromBytes(worldChunk))
-								.createPaste(editSession)
-								.to(BlockVector3.at(chunk.getX() << 4, chunk.getWorld().getMinHeight(), chunk.getZ() << 4))
-								.ignoreAirBlocks(false)
-								.copyEntities(false)
-								.copyBiomes(false)
-								.build();
-						Operations.complete(operation);
-						if (delete) worldChunks.set(index, null);
-						changed.set(true);
-					}
+					var data = mantleChunks.get(index);
+					mantleChunk = data != null ? MantleSnapshot.restore(mantle.getWorldHeight() >> 4, data, manager.getPlugin().getCodecs().current()) : null;
+					if (delete && mantleChunks.getAndSet(index, null) != null)
+						dirty.set(index);
 				}
+				prepared.set(new Prepared(index, mantleChunk, worldChunks.get(index)));
 			} catch (Throwable e) {
-				manager.getPlugin().getLogger().log(Level.SEVERE, "Failed to load region chunk " + chunk.getX() + ", " + chunk.getZ(), e);
-			} finally {
-				chunk.removePluginChunkTicket(manager.getPlugin());
+				error.set(e);
 			}
 		});
-		return changed.get();
+		if (error.get() != null)
+			throw new IOException("Failed to load region chunk " + chunk.getX() + ", " + chunk.getZ(), error.get());
+		return prepared.get();
 	}
 
-	public boolean save(Chunk chunk, boolean overwrite) {
-		lastUse = System.currentTimeMillis();
+	/**
+	 * Called once the block payload returned by {@link #prepare(Chunk, boolean)} was applied to the world.
+	 */
+	public void restored(Chunk chunk, byte[] payload, boolean delete) {
 		int index = index(chunk.getX(), chunk.getZ());
-		if (!overwrite && worldChunks.get(index) != null && !worldChunks.get(index).isBlank() && (manager.getMantle() == null || mantleChunks.get(index) != null))
+		if (delete && worldChunks.compareAndSet(index, payload, null)) {
+			dirty.set(index);
+			manager.getCaptured().clear(chunk.getX(), chunk.getZ());
+			release(payload);
+		}
+	}
+
+	/**
+	 * Stores the chunk unless it is saved already.
+	 *
+	 * @param capture the block capture taken on the main thread, only used when the block payload is replaced
+	 */
+	public boolean save(Chunk chunk, boolean overwrite, @Nullable SnapshotEngine.Capture capture) {
+		int index = index(chunk.getX(), chunk.getZ());
+		if (!overwrite && isSaved(index)) {
+			manager.getCaptured().set(chunk.getX(), chunk.getZ());
 			return false;
+		}
 		AtomicBoolean changed = new AtomicBoolean(false);
 		hyperLock.withLong(index, () -> {
-			chunk.addPluginChunkTicket(manager.getPlugin());
 			try {
+				read(index);
 				var mantle = manager.getMantle();
 				if (mantle != null) {
 					if (mantleChunks.get(index) == null || overwrite) {
-						mantleChunks.set(index, copy(mantle.getWorldHeight() >> 4, mantle.getChunk(chunk.getX(), chunk.getZ())));
+						var mantleChunk = mantle.getChunk(chunk.getX(), chunk.getZ());
+						mantleChunks.set(index, mantleChunk != null ? MantleSnapshot.capture(mantleChunk, manager.getPlugin().getCodecs().current()) : null);
+						dirty.set(index);
 						changed.set(true);
 					}
 				}
 
-				if (worldChunks.get(index) == null || worldChunks.get(index).isBlank() || overwrite) {
-					var world = new BukkitWorld(chunk.getWorld());
-					try (var editSession = WorldEdit.getInstance().newEditSession(world)) {
-						var region = new CuboidRegion(world,
-								BlockVector3.at(chunk.getX() << 4, chunk.getWorld().getMinHeight(), chunk.getZ() << 4),
-								BlockVector3.at((chunk.getX() << 4) + 15, chunk.getWorld().getMaxHeight(), (chunk.getZ() << 4) + 15));
-						try (var clipboard = new BlockArrayClipboard(region)) {
-							var copy = new ForwardExtentCopy(editSession, region, clipboard, region.getMinimumPoint());
-							copy.setCopyingEntities(false);
-							copy.setCopyingBiomes(false);
-							Operations.complete(copy);
-							worldChunks.set(index, toBase64(clipboard));
-							changed.set(true);
-						}
-					}
+				if ((isEmpty(worldChunks.get(index)) || overwrite) && capture != null) {
+					release(worldChunks.getAndSet(index, capture.encode()));
+					dirty.set(index);
+					changed.set(true);
 				}
 			} catch (Throwable e) {
 				manager.getPlugin().getLogger().log(Level.SEVERE, "Failed to save region chunk " + chunk.getX() + ", " + chunk.getZ(), e);
-			} finally {
-				chunk.removePluginChunkTicket(manager.getPlugin());
 			}
 		});
+		if (isSaved(index))
+			manager.getCaptured().set(chunk.getX(), chunk.getZ());
 		return changed.get();
 	}
 
-	private MantleWrapper getWrapper() {
-		return manager.getPlugin().getWrapper();
+	boolean isSaved(int index) {
+		if (!loaded.get(index))
+			return file.hasWorld(index) && (manager.getMantle() == null || file.hasMantle(index));
+		return !isEmpty(worldChunks.get(index)) && (manager.getMantle() == null || mantleChunks.get(index) != null);
 	}
 
-	public void save() throws IOException {
-		try (var dos = new DataOutputStream(new LZ4BlockOutputStream(new FileOutputStream(manager.getFile(x, z))))) {
-			for (int i = 0; i < 1024; i++) {
-				var mantle = mantleChunks.get(i);
-				if (mantle != null) {
-					dos.writeBoolean(true);
-					mantle.write(dos);
-				} else {
-					dos.writeBoolean(false);
-				}
-				dos.flush();
-				var world = worldChunks.get(i);
-				if (world != null && !world.isBlank()) {
-					dos.writeBoolean(true);
-					dos.writeUTF(world);
-				} else {
-					dos.writeBoolean(false);
-				}
-				dos.flush();
-			}
+	/**
+	 * Passes the block payload of every slot to the consumer, slots not read yet are read from the file.
+	 */
+	public void payloads(Consumer<byte[]> consumer) throws IOException {
+		int[] stored = stored();
+		var slots = file.read(stored);
+		var unread = new BitSet(1024);
+		for (int index : stored)
+			unread.set(index);
+		for (int i = 0; i < 1024; i++) {
+			var world = unread.get(i) ? null : worldChunks.get(i);
+			if (!isEmpty(world))
+				consumer.accept(world);
+		}
+		for (var slot : slots) {
+			if (slot != null && !isEmpty(slot.world()))
+				consumer.accept(slot.world());
 		}
 	}
 
-	private static MantleChunk copy(int sectionHeight, MantleChunk chunk) throws IOException, ClassNotFoundException {
-		if (chunk == null)
-			return null;
-		byte[] data;
-		try (var bytes = new ByteArrayOutputStream(); var dos = new DataOutputStream(bytes)) {
-			chunk.write(dos);
-			data = bytes.toByteArray();
-		}
-		try (var bytes = new ByteArrayInputStream(data); var din = new DataInputStream(bytes)) {
-			return new MantleChunk(sectionHeight, din);
+	private void release(@Nullable byte[] payload) {
+		if (!isEmpty(payload))
+			manager.getPlugin().getEngine(payload).release(manager.getWorld(), payload);
+	}
+
+	/**
+	 * @return approximate number of bytes held by this region, used as its cache weight
+	 */
+	public int weight() {
+		long weight = BASE_WEIGHT;
+		for (int i = 0; i < 1024; i++) {
+			var world = worldChunks.get(i);
+			if (world != null)
+				weight += world.length;
+			var mantle = mantleChunks.get(i);
+			if (mantle != null)
+				weight += mantle.length;
 		}
+		return (int) Math.min(Integer.MAX_VALUE, weight);
+	}
+
+	public boolean isDirty() {
+		return !dirty.isEmpty();
 	}
 
-	private static String toBase64(Clipboard clipboard) throws IOException {
-		try (var out = new ByteArrayOutputStream()) {
-			clipboard.save(out, BuiltInClipboardFormat.FAST);
-			return Base64.getEncoder().encodeToString(out.toByteArray());
+	/**
+	 * @return number of chunks changed since the last save
+	 */
+	public int dirtyCount() {
+		return dirty.cardinality();
+	}
+
+	/**
+	 * Writes all slots changed since the last save as part of the group, appended to the journal
+	 * or, once the journal grew too large, by rewriting the file. The captured index is only updated
+	 * after the group was committed and the slots are marked dirty again if the commit failed.
+	 *
+	 * @return false if there was nothing to write
+	 */
+	public boolean save(RegionFile.Group group) throws IOException {
+		if (dirty.isEmpty())
+			return false;
+		var modified = new AtomicBitSet(1024);
+		for (int i = 0; i < 1024; i++) {
+			if (dirty.clear(i))
+				modified.set(i);
 		}
+		var source = new RegionFile.Source() {
+			@Override
+			public boolean modified(int index) {
+				return modified.get(index);
+			}
+
+			@Override
+			public byte[] mantle(int index) {
+				return mantleChunks.get(index);
+			}
+
+			@Override
+			public byte[] world(int index) {
+				var world = worldChunks.get(index);
+				return !isEmpty(world) ? world : null;
+			}
+		};
+		try {
+			if (file.needsCompaction()) file.write(source, group);
+			else file.append(source, group);
+			var sections = manager.getSections();
+			group.prepare(sections, sections::sync);
+		} catch (Throwable e) {
+			redirty(modified);
+			throw e;
+		}
+		group.listen(error -> {
+			if (error != null) {
+				redirty(modified);
+				return;
+			}
+			var captured = manager.getCaptured();
+			for (int i = 0; i < 1024; i++) {
+				if (modified.get(i))
+					captured.commit(x, z, i, isSaved(i));
+			}
+		});
+		return true;
 	}
 
-	public static Clipboard fromBytes(String base64) throws IOException {
-		try (var in = new ByteArrayInputStream(Base64.getDecoder().decode(base64))) {
-			return BuiltInClipboardFormat.FAST.getReader(in).read();
+	private void redirty(AtomicBitSet modified) {
+		for (int i = 0; i < 1024; i++) {
+			if (modified.get(i))
+				dirty.set(i);
 		}
 	}
 
-	private static int index(int x, int z) {
-		return Cache.to1D(x, z, 0, 32, 32);
+	private static boolean isEmpty(byte[] data) {
+		return data == null || data.length == 0;
 	}
+
+	static int index(int x, int z) {
+		return Cache.to1D(x & 31, z & 31, 0, 32, 32);
+	}
+
+	/**
+	 * @param index   slot of the chunk
+	 * @param mantle  decoded mantle chunk, null if the slot has none
+	 * @param payload block payload for the snapshot engine, null if the slot has none
+	 */
+	public record Prepared(int index, @Nullable MantleChunk mantle, @Nullable byte[] payload) {}
 }
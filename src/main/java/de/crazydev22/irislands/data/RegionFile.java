@@ -0,0 +1,706 @@
+package de.crazydev22.irislands.data;
+
+import de.crazydev22.irislands.codec.Codec;
+import de.crazydev22.irislands.codec.Codecs;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Random access region file.
+ * <p>
+ * Layout: {@code magic, version, codec, dictionary, generation} followed by one {@code offset, mantleLength, worldLength, checksum}
+ * entry per slot and the slot payloads. Every slot can be read on its own without
+ * touching the rest of the file, the CRC32C checksum covers both payloads of a slot.
+ * <p>
+ * Mantle payloads are compressed with the {@link Codec} recorded in the header, block payloads are
+ * the raw FAST clipboard bytes. Mantle payloads are handed out in a form the current codec reads and
+ * converted to it when the file is rewritten, so the codec can be changed at any time.
+ * Files of any other version are refused.
+ * <p>
+ * Changed slots are appended to a journal next to the file, {@code magic, codec, dictionary, generation} followed by one
+ * {@code index, mantleLength, worldLength, checksum} record and the payloads per slot, and only folded back
+ * into the main file by {@link #compact()}. Every rewrite bumps the generation of the file, a journal of
+ * another generation was already folded into it and is ignored, even if a crash kept it from being deleted.
+ * <p>
+ * Writes go through a {@link Group}, nothing is durable before the group is committed.
+ */
+public class RegionFile {
+	public static final int MAGIC = 0x494C5246; // ILRF
+	public static final int VERSION = 5;
+	public static final int SLOTS = 1024;
+	private static final int JOURNAL_MAGIC = 0x494C524B; // ILRK
+	private static final int JOURNAL_HEADER_SIZE = 16;
+	private static final int ENTRY_SIZE = 20;
+	private static final int HEADER_SIZE = 20 + SLOTS * ENTRY_SIZE;
+	private static final int RECORD_SIZE = 16;
+	private static final long COMPACT_THRESHOLD = 1 << 20;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Codecs codecs;
+	@Getter
+	private final File file;
+	@Getter
+	private final File journal;
+	private final long[] offsets = new long[SLOTS];
+	private final int[] mantleLengths = new int[SLOTS];
+	private final int[] worldLengths = new int[SLOTS];
+	private final int[] checksums = new int[SLOTS];
+	private final boolean[] journaled = new boolean[SLOTS];
+	private Codec fileCodec = Codecs.LZ4;
+	private Codec journalCodec = Codecs.LZ4;
+	private long journalSize;
+	private int generation;
+	private boolean staleJournal;
+
+	public RegionFile(File file, Codecs codecs) throws IOException {
+		this.file = file;
+		this.codecs = codecs;
+		this.journal = new File(file.getPath() + ".journal");
+		if (file.exists())
+			readHeader();
+		if (journal.exists())
+			replayJournal();
+	}
+
+	private RegionFile(File file, Codecs codecs, boolean ignored) {
+		this.file = file;
+		this.codecs = codecs;
+		this.journal = new File(file.getPath() + ".journal");
+	}
+
+	static RegionFile empty(File file, Codecs codecs) {
+		return new RegionFile(file, codecs, true);
+	}
+
+	/**
+	 * Development builds wrote other versions of this format, which stored chunks at the slot of their
+	 * absolute coordinates. Their slots cannot be told apart reliably, so such files are refused instead of read.
+	 *
+	 * @return whether the file is a region file of another version than {@link #VERSION}
+	 */
+	public static boolean isUnsupported(File file) throws IOException {
+		if (!file.isFile())
+			return false;
+		byte[] prefix = new byte[8];
+		try (var in = new FileInputStream(file)) {
+			if (in.readNBytes(prefix, 0, prefix.length) != prefix.length)
+				return false;
+		}
+		var buffer = ByteBuffer.wrap(prefix);
+		return buffer.getInt() == MAGIC && buffer.getInt() != VERSION;
+	}
+
+	private void readHeader() throws IOException {
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			var header = ByteBuffer.wrap(read(channel, 0, HEADER_SIZE));
+			if (header.getInt() != MAGIC)
+				throw new IOException("Not a region file: " + file);
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported region file version " + version + ": " + file);
+			fileCodec = codecs.get(header.getInt(), header.getInt());
+			generation = header.getInt();
+			for (int i = 0; i < SLOTS; i++) {
+				offsets[i] = header.getLong();
+				mantleLengths[i] = header.getInt();
+				worldLengths[i] = header.getInt();
+				checksums[i] = header.getInt();
+			}
+		}
+	}
+
+	private void replayJournal() throws IOException {
+		try (var channel = FileChannel.open(journal.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < JOURNAL_HEADER_SIZE)
+				return; // header of the first append never reached the disk
+			var header = ByteBuffer.wrap(read(channel, 0, JOURNAL_HEADER_SIZE));
+			if (header.getInt() != JOURNAL_MAGIC)
+				throw new IOException("Not a region journal: " + journal);
+			var codec = codecs.get(header.getInt(), header.getInt());
+			if (header.getInt() != generation) {
+				staleJournal = true;
+				return; // left behind by a rewrite that crashed before deleting it
+			}
+			journalCodec = codec;
+			long position = JOURNAL_HEADER_SIZE;
+			var record = ByteBuffer.allocate(RECORD_SIZE);
+			while (position + RECORD_SIZE <= size) {
+				record.clear();
+				while (record.hasRemaining()) {
+					if (channel.read(record, position + record.position()) < 0)
+						throw new EOFException();
+				}
+				record.flip();
+				int index = record.getInt();
+				int mantleLength = record.getInt();
+				int worldLength = record.getInt();
+				int checksum = record.getInt();
+				if (index < 0 || index >= SLOTS || mantleLength < 0 || worldLength < 0
+						|| position + RECORD_SIZE + mantleLength + worldLength > size)
+					break; // torn tail of an interrupted append
+				if (checksum(read(channel, position + RECORD_SIZE, mantleLength + worldLength)) != checksum)
+					break; // payload of an append that never reached the disk
+				offsets[index] = position + RECORD_SIZE;
+				mantleLengths[index] = mantleLength;
+				worldLengths[index] = worldLength;
+				checksums[index] = checksum;
+				journaled[index] = true;
+				position += RECORD_SIZE + mantleLength + worldLength;
+			}
+			journalSize = position;
+		}
+	}
+
+	public boolean hasMantle(int index) {
+		return mantleLengths[index] > 0;
+	}
+
+	public boolean hasWorld(int index) {
+		return worldLengths[index] > 0;
+	}
+
+	/**
+	 * @return stored size of the mantle payload of the slot, 0 if it has none
+	 */
+	public int mantleLength(int index) {
+		return mantleLengths[index];
+	}
+
+	/**
+	 * @return stored size of the block payload of the slot, 0 if it has none
+	 */
+	public int worldLength(int index) {
+		return worldLengths[index];
+	}
+
+	public Codec getCodec() {
+		return fileCodec;
+	}
+
+	/**
+	 * @return bytes of the file and its journal taken by neither the header nor live payloads, reclaimed by {@link #compact()}
+	 */
+	public long deadBytes() {
+		lock.readLock().lock();
+		try {
+			long total = file.length() + journal.length();
+			if (file.exists())
+				total -= HEADER_SIZE;
+			for (int i = 0; i < SLOTS; i++)
+				total -= mantleLengths[i] + worldLengths[i];
+			return Math.max(0, total);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return bytes at the end of the journal that were dropped on replay, left by an interrupted append
+	 */
+	public long tornJournalBytes() {
+		return journal.exists() && !staleJournal ? Math.max(0, journal.length() - journalSize) : 0;
+	}
+
+	/**
+	 * @return whether the journal belongs to an older generation of the file and was ignored, it is dropped by the next append or rewrite
+	 */
+	public boolean hasStaleJournal() {
+		return staleJournal;
+	}
+
+	/**
+	 * Reads the slot, verifies its checksum and decodes its mantle payload with the codec it was written with.
+	 *
+	 * @throws IOException if the slot is damaged
+	 */
+	public void verify(int index) throws IOException {
+		lock.readLock().lock();
+		try {
+			if (mantleLengths[index] <= 0 && worldLengths[index] <= 0)
+				return;
+			Slot slot;
+			try (var channel = FileChannel.open(source(index), StandardOpenOption.READ)) {
+				slot = readSlot(channel, index);
+			}
+			if (slot.mantle() != null) {
+				try {
+					codec(index).decompress(slot.mantle());
+				} catch (RuntimeException e) {
+					throw new IOException("Undecodable mantle payload in slot " + index + " of " + file, e);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads both payloads of a slot with one read and verifies its checksum.
+	 *
+	 * @return null if the slot is empty
+	 */
+	@Nullable
+	public Slot read(int index) throws IOException {
+		return read(new int[]{index})[0];
+	}
+
+	/**
+	 * Reads the given slots like {@link #read(int)}, opening the file and the journal only once for all of them.
+	 *
+	 * @return the slots in the order of the indices, null for empty slots
+	 */
+	public Slot[] read(int[] indices) throws IOException {
+		lock.readLock().lock();
+		try {
+			boolean fromFile = false, fromJournal = false;
+			for (int index : indices) {
+				if (mantleLengths[index] <= 0 && worldLengths[index] <= 0)
+					continue;
+				fromFile |= !journaled[index];
+				fromJournal |= journaled[index];
+			}
+			var slots = new Slot[indices.length];
+			var current = codecs.current();
+			try (var in = fromFile ? FileChannel.open(file.toPath(), StandardOpenOption.READ) : null;
+				 var log = fromJournal ? FileChannel.open(journal.toPath(), StandardOpenOption.READ) : null) {
+				for (int i = 0; i < indices.length; i++) {
+					int index = indices[i];
+					if (mantleLengths[index] <= 0 && worldLengths[index] <= 0)
+						continue;
+					var slot = readSlot(journaled[index] ? log : in, index);
+					var codec = codec(index);
+					if (slot.mantle() != null && !current.reads(codec))
+						slot = new Slot(current.compress(codec.decompress(slot.mantle())), slot.world());
+					slots[i] = slot;
+				}
+			}
+			return slots;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Nullable
+	public byte[] readMantle(int index) throws IOException {
+		var slot = read(index);
+		return slot != null ? slot.mantle() : null;
+	}
+
+	@Nullable
+	public byte[] readWorld(int index) throws IOException {
+		var slot = read(index);
+		return slot != null ? slot.world() : null;
+	}
+
+	/**
+	 * Appends the modified slots of the source to the journal.
+	 */
+	public void append(Source source) throws IOException {
+		try (var group = new Group()) {
+			append(source, group);
+			group.commit();
+		}
+	}
+
+	/**
+	 * Appends the modified slots of the source to the journal, they become durable once the group is committed.
+	 */
+	public void append(Source source, Group group) throws IOException {
+		lock.writeLock().lock();
+		try {
+			var codec = codecs.current();
+			if (journalSize > 0 && !journalCodec.sameFormat(codec))
+				throw new IOException("Journal of " + file + " has to be compacted first");
+			var out = group.open(journal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			long position = journalSize;
+			if (out.size() > position)
+				out.truncate(position);
+			if (position == 0) {
+				write(out, 0, ByteBuffer.allocate(JOURNAL_HEADER_SIZE)
+						.putInt(JOURNAL_MAGIC)
+						.putInt(codec.type().id)
+						.putInt(codec.dictionary())
+						.putInt(generation)
+						.flip());
+				position = journalSize = JOURNAL_HEADER_SIZE;
+				journalCodec = codec;
+				staleJournal = false;
+			}
+			for (int i = 0; i < SLOTS; i++) {
+				if (!source.modified(i))
+					continue;
+				byte[] mantle = source.mantle(i);
+				byte[] world = source.world(i);
+				int mantleLength = mantle != null ? mantle.length : 0;
+				int worldLength = world != null ? world.length : 0;
+				int checksum = checksum(mantle, world);
+
+				var record = ByteBuffer.allocate(RECORD_SIZE + mantleLength + worldLength);
+				record.putInt(i).putInt(mantleLength).putInt(worldLength).putInt(checksum);
+				if (mantle != null) record.put(mantle);
+				if (world != null) record.put(world);
+				write(out, position, record.flip());
+
+				offsets[i] = position + RECORD_SIZE;
+				mantleLengths[i] = mantleLength;
+				worldLengths[i] = worldLength;
+				checksums[i] = checksum;
+				journaled[i] = true;
+				position += record.limit();
+				journalSize = position;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean needsCompaction() {
+		return journalSize > 0 && !journalCodec.sameFormat(codecs.current())
+				|| journalSize > Math.max(COMPACT_THRESHOLD, file.length() / 2);
+	}
+
+	/**
+	 * Folds the journal back into the main file.
+	 */
+	public void compact() throws IOException {
+		write(new Source() {
+			@Override
+			public boolean modified(int index) {
+				return false;
+			}
+
+			@Override
+			public byte[] mantle(int index) {
+				return null;
+			}
+
+			@Override
+			public byte[] world(int index) {
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Rewrites the whole file. Slots the source does not report as modified are
+	 * copied over from the current file and journal without being decoded.
+	 */
+	public void write(Source source) throws IOException {
+		try (var group = new Group()) {
+			write(source, group);
+			group.commit();
+		}
+	}
+
+	/**
+	 * Rewrites the whole file into a temporary file, which replaces the file and its journal once the group is committed.
+	 * Mantle payloads of other codecs are converted to the current one.
+	 */
+	public void write(Source source, Group group) throws IOException {
+		lock.writeLock().lock();
+		try {
+			var codec = codecs.current();
+			int newGeneration = generation + 1;
+			var temp = new File(file.getPath() + ".tmp").toPath();
+			long[] newOffsets = new long[SLOTS];
+			int[] newMantleLengths = new int[SLOTS];
+			int[] newWorldLengths = new int[SLOTS];
+			int[] newChecksums = new int[SLOTS];
+			var out = group.create(temp);
+			try (var in = file.exists() ? FileChannel.open(file.toPath(), StandardOpenOption.READ) : null;
+				 var log = journal.exists() ? FileChannel.open(journal.toPath(), StandardOpenOption.READ) : null) {
+				long position = HEADER_SIZE;
+				for (int i = 0; i < SLOTS; i++) {
+					var channel = journaled[i] ? log : in;
+					int mantleLength, worldLength, checksum;
+					if (channel != null && !source.modified(i) && codec(i).sameFormat(codec)) {
+						// copied as is, a damaged slot stays detectable after compaction
+						mantleLength = mantleLengths[i];
+						worldLength = worldLengths[i];
+						checksum = checksums[i];
+						if (mantleLength + worldLength > 0)
+							write(out, position, ByteBuffer.wrap(read(channel, offsets[i], mantleLength + worldLength)));
+					} else {
+						byte[] mantle, world;
+						if (source.modified(i) || channel == null) {
+							mantle = source.mantle(i);
+							world = source.world(i);
+						} else {
+							var slot = mantleLengths[i] + worldLengths[i] > 0 ? readSlot(channel, i) : new Slot(null, null);
+							mantle = slot.mantle() != null && !codec.sameFormat(codec(i))
+									? codec.compress(codec(i).decompress(slot.mantle()))
+									: slot.mantle();
+							world = slot.world();
+						}
+						mantleLength = mantle != null ? mantle.length : 0;
+						worldLength = world != null ? world.length : 0;
+						checksum = checksum(mantle, world);
+						if (mantle != null)
+							write(out, position, ByteBuffer.wrap(mantle));
+						if (world != null)
+							write(out, position + mantleLength, ByteBuffer.wrap(world));
+					}
+					if (mantleLength + worldLength == 0)
+						continue;
+
+					newOffsets[i] = position;
+					newMantleLengths[i] = mantleLength;
+					newWorldLengths[i] = worldLength;
+					newChecksums[i] = checksum;
+					position += mantleLength + worldLength;
+				}
+
+				var header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC).putInt(VERSION).putInt(codec.type().id).putInt(codec.dictionary()).putInt(newGeneration);
+				for (int i = 0; i < SLOTS; i++) {
+					header.putLong(newOffsets[i])
+							.putInt(newMantleLengths[i])
+							.putInt(newWorldLengths[i])
+							.putInt(newChecksums[i]);
+				}
+				write(out, 0, header.flip());
+			}
+
+			group.install(temp, () -> {
+				lock.writeLock().lock();
+				try {
+					Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					System.arraycopy(newOffsets, 0, offsets, 0, SLOTS);
+					System.arraycopy(newMantleLengths, 0, mantleLengths, 0, SLOTS);
+					System.arraycopy(newWorldLengths, 0, worldLengths, 0, SLOTS);
+					System.arraycopy(newChecksums, 0, checksums, 0, SLOTS);
+					Arrays.fill(journaled, false);
+					journalSize = 0;
+					generation = newGeneration;
+					fileCodec = codec;
+					journalCodec = codec;
+
+					// the old journal is stale from here on, even if it survives a crash before the delete
+					staleJournal = journal.exists();
+					Files.deleteIfExists(journal.toPath());
+					staleJournal = false;
+				} finally {
+					lock.writeLock().unlock();
+				}
+			});
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private Slot readSlot(FileChannel channel, int index) throws IOException {
+		int mantleLength = mantleLengths[index];
+		int worldLength = worldLengths[index];
+		byte[] data = read(channel, offsets[index], mantleLength + worldLength);
+		if (checksum(data) != checksums[index])
+			throw new IOException("Checksum mismatch in slot " + index + " of " + file);
+		return new Slot(mantleLength > 0 ? Arrays.copyOfRange(data, 0, mantleLength) : null,
+				worldLength > 0 ? Arrays.copyOfRange(data, mantleLength, mantleLength + worldLength) : null);
+	}
+
+	private Codec codec(int index) {
+		return journaled[index] ? journalCodec : fileCodec;
+	}
+
+	private Path source(int index) {
+		return journaled[index] ? journal.toPath() : file.toPath();
+	}
+
+	/**
+	 * LZ4 compresses payloads that carry their own format, like section and palette payloads.
+	 * Mantle payloads go through {@link Codecs#current()} instead.
+	 */
+	public static byte[] compress(byte[] data) {
+		return Codecs.LZ4.compress(data);
+	}
+
+	public static byte[] compress(byte[] data, int offset, int length) {
+		return Codecs.LZ4.compress(data, offset, length);
+	}
+
+	public static byte[] decompress(byte[] data) {
+		return Codecs.LZ4.decompress(data);
+	}
+
+	static byte[] read(FileChannel channel, long position, int length) throws IOException {
+		var buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException();
+		}
+		return buffer.array();
+	}
+
+	static void write(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer, position + buffer.position());
+	}
+
+	private static int checksum(byte[] data) {
+		var crc = new CRC32C();
+		crc.update(data);
+		return (int) crc.getValue();
+	}
+
+	private static int checksum(@Nullable byte[] mantle, @Nullable byte[] world) {
+		var crc = new CRC32C();
+		if (mantle != null) crc.update(mantle);
+		if (world != null) crc.update(world);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Both payloads of a slot, null where the slot has none.
+	 */
+	public record Slot(@Nullable byte[] mantle, @Nullable byte[] world) {}
+
+	/**
+	 * Group commit over the writes to several region files.
+	 * <p>
+	 * Writes only reach the page cache until {@link #commit()}, which forces every written file,
+	 * moves rewritten files into place and syncs each of their directories once. Listeners run
+	 * after the commit, with the error if it failed or the group was closed without a commit.
+	 */
+	public static class Group implements Closeable {
+		private final Map<Path, FileChannel> channels = new LinkedHashMap<>();
+		private final Map<Path, IOAction> installs = new LinkedHashMap<>();
+		private final Map<Object, IOAction> prepares = new LinkedHashMap<>();
+		private final Set<Path> directories = new LinkedHashSet<>();
+		private final Set<Path> temps = new LinkedHashSet<>();
+		private final List<Consumer<@Nullable Throwable>> listeners = new ArrayList<>();
+		private boolean done;
+
+		private FileChannel open(Path path, OpenOption... options) throws IOException {
+			var channel = channels.get(path);
+			if (channel == null) {
+				channel = FileChannel.open(path, options);
+				channels.put(path, channel);
+				directories.add(path.toAbsolutePath().getParent());
+			}
+			return channel;
+		}
+
+		private FileChannel create(Path path) throws IOException {
+			var channel = channels.remove(path);
+			if (channel != null)
+				channel.close();
+			temps.add(path);
+			return open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		private void install(Path temp, IOAction action) {
+			installs.put(temp, action);
+		}
+
+		/**
+		 * Runs the action once per key before anything of the group is made durable, used to sync
+		 * files outside the group that the written slots depend on.
+		 */
+		public void prepare(Object key, IOAction action) {
+			prepares.putIfAbsent(key, action);
+		}
+
+		public void listen(Consumer<@Nullable Throwable> listener) {
+			listeners.add(listener);
+		}
+
+		/**
+		 * @return number of files written in this group
+		 */
+		public int size() {
+			return channels.size();
+		}
+
+		public void commit() throws IOException {
+			if (done)
+				throw new IllegalStateException("Group already committed");
+			try {
+				for (var prepare : prepares.values())
+					prepare.run();
+				prepares.clear();
+				for (var channel : channels.values())
+					channel.force(false);
+				closeChannels();
+				for (var install : installs.values())
+					install.run();
+				installs.clear();
+				for (var directory : directories)
+					sync(directory);
+			} catch (IOException | RuntimeException e) {
+				finish(e);
+				throw e;
+			}
+			finish(null);
+		}
+
+		@Override
+		public void close() {
+			closeChannels();
+			for (var temp : temps) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException ignored) {
+				}
+			}
+			if (!done)
+				finish(new IOException("Group closed without commit"));
+		}
+
+		private void closeChannels() {
+			for (var channel : channels.values()) {
+				try {
+					channel.close();
+				} catch (IOException ignored) {
+				}
+			}
+			channels.clear();
+		}
+
+		private void finish(@Nullable Throwable error) {
+			done = true;
+			for (var listener : listeners)
+				listener.accept(error);
+			listeners.clear();
+		}
+
+		private static void sync(Path directory) {
+			try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+				channel.force(true);
+			} catch (IOException ignored) {
+				// not every platform can open directories, renames are still atomic there
+			}
+		}
+	}
+
+	public interface IOAction {
+		void run() throws IOException;
+	}
+
+	public interface Source {
+		boolean modified(int index);
+
+		@Nullable
+		byte[] mantle(int index) throws IOException;
+
+		@Nullable
+		byte[] world(int index) throws IOException;
+	}
+}
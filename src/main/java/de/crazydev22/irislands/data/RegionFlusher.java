@@ -0,0 +1,318 @@
+package de.crazydev22.irislands.data;
+
+import de.crazydev22.irislands.IrisLands;
+import de.crazydev22.irislands.metrics.Events;
+import de.crazydev22.irislands.metrics.Metrics;
+import de.crazydev22.irislands.metrics.StatsSource;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * Write-behind flusher for dirty regions.
+ * <p>
+ * Regions queued again before they were written are coalesced into one write. A batch is written
+ * once it holds the configured number of regions or its oldest region waited for the configured
+ * latency, all files of a batch are made durable by one {@link RegionFile.Group} commit.
+ */
+public class RegionFlusher implements Runnable, StatsSource {
+	private final IrisLands plugin;
+	private final int batchSize;
+	private final long latency;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition ready = lock.newCondition();
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private final Map<File, Pending> queue = new LinkedHashMap<>();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder regions = new LongAdder();
+	private volatile boolean stopped;
+	private Thread thread;
+
+	public RegionFlusher(IrisLands plugin, int batchSize, long latencyMillis) {
+		this.plugin = plugin;
+		this.batchSize = batchSize;
+		this.latency = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+	}
+
+	public void start() {
+		thread = new Thread(this, "IrisLands Flusher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the background thread and writes the given regions together with everything still queued.
+	 * Batches are written in parallel, regions with the most changed chunks first, and no further
+	 * batch is started once the time budget ran out.
+	 */
+	public void shutdown(Collection<Region> dirty, int parallelism, long budgetMillis) {
+		long start = System.nanoTime();
+		long budget = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+		Map<File, Pending> pending = new LinkedHashMap<>();
+		lock.lock();
+		try {
+			stopped = true;
+			ready.signalAll();
+			pending.putAll(queue);
+			queue.clear();
+		} finally {
+			lock.unlock();
+		}
+		for (var region : dirty)
+			pending.putIfAbsent(region.getFile().getFile(), new Pending(region, new CompletableFuture<>(), start));
+		if (pending.isEmpty())
+			return;
+
+		Map<Pending, Integer> changes = new HashMap<>();
+		for (var entry : pending.values())
+			changes.put(entry, entry.region.dirtyCount());
+		List<Pending> ordered = new ArrayList<>(pending.values());
+		ordered.sort(Comparator.comparing(changes::get, Comparator.reverseOrder()));
+		List<List<Pending>> batches = new ArrayList<>();
+		for (int i = 0; i < ordered.size(); i += batchSize)
+			batches.add(ordered.subList(i, Math.min(i + batchSize, ordered.size())));
+
+		var next = new AtomicInteger();
+		int threads = Math.min(parallelism, batches.size());
+		var executor = Executors.newFixedThreadPool(threads, runnable -> {
+			var thread = new Thread(runnable, "IrisLands Shutdown Flush");
+			thread.setDaemon(true);
+			return thread;
+		});
+		writeLock.lock();
+		try {
+			for (int i = 0; i < threads; i++) {
+				executor.execute(() -> {
+					int index;
+					while (System.nanoTime() - start < budget && (index = next.getAndIncrement()) < batches.size())
+						writeBatch(batches.get(index));
+				});
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			writeLock.unlock();
+		}
+
+		int skipped = 0, chunks = 0;
+		for (int i = Math.min(next.get(), batches.size()); i < batches.size(); i++) {
+			for (var left : batches.get(i)) {
+				skipped++;
+				chunks += left.region.dirtyCount();
+				left.future.complete(null);
+			}
+		}
+		if (skipped > 0) {
+			plugin.getLogger().warning(String.format("Shutdown time budget of %d ms ran out, changes to %d chunks in %d regions were not saved",
+					budgetMillis, chunks, skipped));
+		}
+	}
+
+	/**
+	 * Queues the region to be written with the next batch.
+	 *
+	 * @return completes once the region is durable, or immediately if the flusher was stopped
+	 */
+	public CompletableFuture<Void> submit(Region region) {
+		if (stopped) {
+			write(List.of(new Pending(region, new CompletableFuture<>(), System.nanoTime())));
+			return CompletableFuture.completedFuture(null);
+		}
+		lock.lock();
+		try {
+			var pending = queue.computeIfAbsent(region.getFile().getFile(), file -> new Pending(region, new CompletableFuture<>(), System.nanoTime()));
+			if (queue.size() == 1 || queue.size() >= batchSize)
+				ready.signal();
+			return pending.future;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the given regions as one batch on the calling thread, together with their queued writes.
+	 */
+	public void flush(Collection<Region> regions) {
+		List<Pending> batch = new ArrayList<>(regions.size());
+		lock.lock();
+		try {
+			for (var region : regions) {
+				var pending = queue.remove(region.getFile().getFile());
+				batch.add(pending != null ? pending : new Pending(region, new CompletableFuture<>(), System.nanoTime()));
+			}
+		} finally {
+			lock.unlock();
+		}
+		write(batch);
+	}
+
+	/**
+	 * Drops the queued writes of the manager's regions and waits for a running batch, used when its backups are cleared.
+	 * Blocks for as long as a batch takes to write, never call it on the main thread.
+	 */
+	public void discard(RegionManager manager) {
+		List<Pending> dropped = new ArrayList<>();
+		lock.lock();
+		try {
+			var iterator = queue.values().iterator();
+			while (iterator.hasNext()) {
+				var pending = iterator.next();
+				if (pending.region.getManager() == manager) {
+					dropped.add(pending);
+					iterator.remove();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		writeLock.lock();
+		writeLock.unlock();
+		dropped.forEach(pending -> pending.future.complete(null));
+	}
+
+	public int size() {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void report(List<String> lines) {
+		long batches = this.batches.sum(), flushed = regions.sum();
+		lines.add(String.format(" flush: %d queued, %d batches, %d regions, %.1f regions per batch",
+				size(), batches, flushed, batches == 0 ? 0 : (double) flushed / batches));
+	}
+
+	@Override
+	public void report(Events.Stats event) {
+		event.flushBatches = batches.sum();
+		event.flushRegions = regions.sum();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!stopped) {
+				lock.lock();
+				try {
+					while (queue.isEmpty() && !stopped)
+						ready.await();
+					if (stopped)
+						return;
+					long deadline = queue.values().iterator().next().queued + latency;
+					long remaining;
+					while (!stopped && queue.size() < batchSize && (remaining = deadline - System.nanoTime()) > 0)
+						ready.awaitNanos(remaining);
+				} finally {
+					lock.unlock();
+				}
+				write(take(batchSize));
+			}
+		} catch (InterruptedException ignored) {
+		} catch (Throwable e) {
+			plugin.getLogger().log(Level.SEVERE, "Region flusher stopped", e);
+		}
+	}
+
+	private List<Pending> take(int count) {
+		List<Pending> batch = new ArrayList<>(Math.min(count, batchSize));
+		lock.lock();
+		try {
+			Iterator<Pending> iterator = queue.values().iterator();
+			while (iterator.hasNext() && batch.size() < count) {
+				batch.add(iterator.next());
+				iterator.remove();
+			}
+		} finally {
+			lock.unlock();
+		}
+		return batch;
+	}
+
+	/**
+	 * Writes the batch and commits it with one group, only one batch is written at a time.
+	 */
+	private void write(List<Pending> batch) {
+		if (batch.isEmpty())
+			return;
+		writeLock.lock();
+		try {
+			writeBatch(batch);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the batch without locking, batches written at the same time must not share regions.
+	 */
+	private void writeBatch(List<Pending> batch) {
+		List<Written> written = new ArrayList<>(batch.size());
+		try (var group = new RegionFile.Group()) {
+			for (var pending : batch) {
+				var event = new Events.RegionFlush();
+				event.begin();
+				long start = System.nanoTime();
+				try {
+					if (pending.region.getManager().isCurrent(pending.region) && pending.region.save(group)) {
+						written.add(new Written(pending, start, event));
+						continue;
+					}
+				} catch (Throwable e) {
+					log(pending.region, e);
+				}
+				pending.future.complete(null);
+			}
+			group.commit();
+			long end = System.nanoTime();
+			for (var write : written) {
+				Metrics.REGION_FLUSH.record(end - write.start);
+				var event = write.event;
+				event.end();
+				if (event.shouldCommit()) {
+					var region = write.pending.region;
+					event.world = region.getManager().getWorld().getName();
+					event.regionX = region.getX();
+					event.regionZ = region.getZ();
+					event.batchSize = written.size();
+					event.commit();
+				}
+			}
+			batches.increment();
+			regions.add(written.size());
+		} catch (Throwable e) {
+			written.forEach(write -> log(write.pending.region, e));
+		} finally {
+			written.forEach(write -> write.pending.future.complete(null));
+		}
+	}
+
+	private void log(Region region, Throwable e) {
+		plugin.getLogger().log(Level.SEVERE, "Failed to save region " + region.getX() + ", " + region.getZ()
+				+ " of world " + region.getManager().getWorld().getName(), e);
+	}
+
+	private record Pending(Region region, CompletableFuture<Void> future, long queued) {}
+
+	private record Written(Pending pending, long start, Events.RegionFlush event) {}
+}
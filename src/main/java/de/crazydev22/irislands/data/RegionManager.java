@@ -1,176 +1,596 @@
 package de.crazydev22.irislands.data;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.volmit.iris.core.tools.IrisToolbelt;
-import com.volmit.iris.engine.data.cache.Cache;
+import com.volmit.iris.util.documentation.ChunkCoordinates;
 import com.volmit.iris.util.documentation.RegionCoordinates;
 import com.volmit.iris.util.mantle.Mantle;
-import com.volmit.iris.util.parallel.HyperLock;
 import de.crazydev22.irislands.IrisLands;
+import de.crazydev22.irislands.metrics.Events;
+import de.crazydev22.irislands.metrics.Metrics;
+import de.crazydev22.irislands.snapshot.SnapshotEngine;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 import lombok.ToString;
+import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
 import org.bukkit.World;
+import org.bukkit.scheduler.BukkitTask;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
-import java.util.*;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 @Data
 public class RegionManager {
-	private final Map<@NonNull Long, @NonNull Region> regions = new HashMap<>();
-	private final HashSet<@NonNull Long> toUnload = new HashSet<>();
+	private final AsyncCache<@NonNull Long, @NonNull Region> regions;
+	private static final String TOMBSTONE = "backups.deleted-";
+	private final Map<@NonNull Long, @NonNull Region> writing = new ConcurrentHashMap<>();
+	private final Map<@NonNull Long, @NonNull Long> prefetched = new ConcurrentHashMap<>();
+	private final Set<@NonNull Long> saving = ConcurrentHashMap.newKeySet();
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	private final RestorePipeline pipeline = new RestorePipeline(this);
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	private final SectionStore sections;
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	private final CapturedIndex captured;
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	private final BukkitTask collector;
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	private final BukkitTask indexer;
 
-	private final ReentrantLock unloadLock = new ReentrantLock(true);
 	private final AtomicBoolean closed = new AtomicBoolean();
-	private final HyperLock hyperLock = new HyperLock();
+	private final AtomicInteger generation = new AtomicInteger();
+	private final LongAdder prefetchIssued = new LongAdder();
+	private final LongAdder prefetchHits = new LongAdder();
+	private final LongAdder prefetchMisses = new LongAdder();
+	private final LongAdder prefetchWasted = new LongAdder();
 
 	@ToString.Exclude
 	@EqualsAndHashCode.Exclude
 	private final IrisLands plugin;
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	private final World world;
 	private final Mantle mantle;
 	private final File dataFolder;
 
 	public RegionManager(IrisLands plugin, World world) {
 		this.plugin = plugin;
+		this.world = world;
 		this.mantle = getMantle(world);
 		this.dataFolder = new File(world.getWorldFolder(), "backups");
+		deleteTombstones();
+		checkFormats();
+
+		var settings = plugin.getSettings();
+		this.regions = Caffeine.newBuilder()
+				.maximumWeight(settings.getCacheBudget())
+				.weigher((Long key, Region region) -> region.weight())
+				.expireAfterAccess(settings.getCacheExpiry(), TimeUnit.MILLISECONDS)
+				.scheduler(Scheduler.systemScheduler())
+				.executor(plugin.getIo())
+				.evictionListener((Long key, Region region, RemovalCause cause) -> {
+					if (key != null && prefetched.remove(key) != null)
+						prefetchWasted.increment();
+					if (key != null && region != null)
+						writeBack(key, region);
+				})
+				.recordStats()
+				.buildAsync();
+		try {
+			this.sections = new SectionStore(new File(dataFolder, "sections.pack"), settings.getSectionCacheSize());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.captured = getCaptured(new File(dataFolder, "captured.bin"));
+		long interval = settings.getSectionCollectInterval() / 50;
+		this.collector = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::collectSections, interval, interval);
+		this.indexer = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::saveCaptured, 1200, 1200);
 	}
 
-	public void trim(long maxLastUse) {
-		unloadLock.lock();
+	/**
+	 * Reports region files written by development builds, they are refused on every access until cleared.
+	 */
+	private void checkFormats() {
+		File[] files = dataFolder.listFiles((dir, name) -> name.endsWith(".lz4b"));
+		if (files == null)
+			return;
+		int unsupported = 0;
+		for (var file : files) {
+			try {
+				if (RegionFile.isUnsupported(file))
+					unsupported++;
+			} catch (IOException e) {
+				plugin.getLogger().log(Level.WARNING, "Failed to read the header of region file " + file, e);
+			}
+		}
+		if (unsupported > 0) {
+			plugin.getLogger().severe(String.format("%d region files of world %s were written by a development build and cannot be read, "
+					+ "run /irislands clear %s to start over", unsupported, world.getName(), world.getName()));
+		}
+	}
+
+	private CapturedIndex getCaptured(File file) {
 		try {
-			regions.forEach((key, value) -> {
-				if (System.currentTimeMillis() - value.getLastUse() > maxLastUse)
-					toUnload.add(key);
-			});
-		} finally {
-			unloadLock.unlock();
+			return new CapturedIndex(file);
+		} catch (IOException e) {
+			plugin.getLogger().log(Level.WARNING, "Discarding unreadable captured index " + file, e);
+			try {
+				Files.deleteIfExists(file.toPath());
+				return new CapturedIndex(file);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
 		}
 	}
 
-	public boolean clear() {
-		unloadLock.lock();
-		boolean result;
+	/**
+	 * Whether the chunk already has a backup, without touching its region.
+	 */
+	@ChunkCoordinates
+	public boolean isCaptured(int x, int z) {
+		return captured.contains(x, z);
+	}
+
+	/**
+	 * Whether the chunk is being loaded by {@link #save(int, int, boolean)}, which saves it once the load completed.
+	 */
+	@ChunkCoordinates
+	public boolean isSaving(int x, int z) {
+		return saving.contains(key(x, z));
+	}
+
+	public void saveCaptured() {
 		try {
-			result = deleteDir(dataFolder);
-			regions.clear();
-			toUnload.clear();
-		} finally {
-			unloadLock.unlock();
+			captured.save();
+		} catch (Throwable e) {
+			plugin.getLogger().log(Level.SEVERE, "Failed to save captured index of world " + world.getName(), e);
 		}
-		return result;
 	}
 
-	private static boolean deleteDir(File file) {
-		File[] contents = file.listFiles();
-		if (contents != null) {
-			for (File f : contents) {
-				try {
-					if (!Files.isSymbolicLink(f.toPath())) {
-						deleteDir(f);
-					}
-				} catch (Exception ignored) {
-				}
+	public CacheStats getStats() {
+		return regions.synchronous().stats();
+	}
+
+	/**
+	 * Drops every backup of this world without waiting for the files to be deleted. The backups folder
+	 * is renamed to a tombstone and removed on the I/O executor, the store starts over empty.
+	 * Waits for a running flush batch to finish first, so it has to be called off the main thread.
+	 *
+	 * @return false if there was nothing to clear
+	 */
+	public boolean clear() {
+		generation.incrementAndGet();
+		plugin.getFlusher().discard(this);
+		regions.synchronous().invalidateAll();
+		writing.clear();
+		prefetched.clear();
+		boolean moved = false;
+		if (dataFolder.exists()) {
+			var tombstone = new File(dataFolder.getParentFile(), TOMBSTONE + System.currentTimeMillis());
+			try {
+				Files.move(dataFolder.toPath(), tombstone.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				moved = true;
+				delete(tombstone);
+			} catch (IOException e) {
+				plugin.getLogger().log(Level.SEVERE, "Failed to move backups of world " + world.getName() + " out of the way", e);
 			}
 		}
-		return file.delete();
+		sections.clear();
+		captured.clear();
+		return moved;
+	}
+
+	/**
+	 * @return whether the region was opened after the last {@link #clear()}, stale regions are never written
+	 */
+	boolean isCurrent(Region region) {
+		return region.getGeneration() == generation.get();
+	}
+
+	int getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Removes the tombstones a previous run did not finish deleting.
+	 */
+	private void deleteTombstones() {
+		File[] tombstones = dataFolder.getParentFile().listFiles((dir, name) -> name.startsWith(TOMBSTONE));
+		if (tombstones != null) {
+			for (var tombstone : tombstones)
+				delete(tombstone);
+		}
+	}
+
+	private void delete(File tombstone) {
+		plugin.getIo().execute(() -> {
+			try {
+				Files.walkFileTree(tombstone.toPath(), new SimpleFileVisitor<>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+						Files.delete(file);
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+						if (e != null)
+							throw e;
+						Files.delete(dir);
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} catch (Throwable e) {
+				plugin.getLogger().log(Level.WARNING, "Failed to delete " + tombstone + ", retrying on the next start", e);
+			}
+		});
+	}
+
+	private void writeBack(long key, Region region) {
+		writing.put(key, region);
+		plugin.getFlusher().submit(region).whenComplete((v, e) -> writing.remove(key, region));
+	}
+
+	/**
+	 * Queues the region with the write-behind flusher if it has unsaved changes.
+	 */
+	void scheduleFlush(Region region) {
+		if (region.isDirty() && isCurrent(region))
+			plugin.getFlusher().submit(region);
+	}
+
+	@NonNull
+	@ChunkCoordinates
+	public CompletableFuture<@NonNull Boolean> save(int x, int z, boolean overwrite) {
+		long key = key(x, z);
+		saving.add(key);
+		return world.getChunkAtAsync(x, z)
+				.thenCompose(chunk -> save(chunk, overwrite))
+				.whenComplete((changed, e) -> saving.remove(key));
+	}
+
+	@NonNull
+	public CompletableFuture<@NonNull Boolean> save(Chunk chunk, boolean overwrite) {
+		int index = Region.index(chunk.getX(), chunk.getZ());
+		var event = new Events.ChunkSave();
+		event.begin();
+		long start = System.nanoTime();
+		return withTicket(chunk, () -> acquire(chunk.getX() >> 5, chunk.getZ() >> 5)
+				.thenCompose(region -> overwrite || !region.isSaved(index)
+						? region.preload(new int[]{index}, plugin.getIo())
+						: CompletableFuture.completedFuture(region))
+				.thenCompose(region -> !overwrite && region.isSaved(index)
+						? CompletableFuture.completedFuture(region.save(chunk, false, null))
+						: capture(chunk).thenApplyAsync(capture -> {
+							boolean changed = region.save(chunk, overwrite, capture);
+							reweigh(region);
+							scheduleFlush(region);
+							return changed;
+						}, plugin.getService())))
+				.whenComplete((changed, e) -> {
+					if (e != null)
+						return;
+					Metrics.CHUNK_SAVE.record(System.nanoTime() - start);
+					event.end();
+					if (event.shouldCommit()) {
+						event.world = world.getName();
+						event.chunkX = chunk.getX();
+						event.chunkZ = chunk.getZ();
+						event.changed = changed;
+						event.commit();
+					}
+				});
 	}
 
-	public void unload() {
-		unloadLock.lock();
+	/**
+	 * Takes the block capture on the main thread, engines copy the live chunk there and encode it off it.
+	 */
+	private CompletableFuture<SnapshotEngine.Capture> capture(Chunk chunk) {
+		var engine = plugin.getEngine();
+		if (Bukkit.isPrimaryThread()) {
+			try {
+				return CompletableFuture.completedFuture(engine.capture(chunk));
+			} catch (Throwable e) {
+				return CompletableFuture.failedFuture(e);
+			}
+		}
+		var future = new CompletableFuture<SnapshotEngine.Capture>();
 		try {
-			for (Long key : toUnload.toArray(Long[]::new)) {
-				Region region = regions.get(key);
+			Bukkit.getScheduler().runTask(plugin, () -> {
 				try {
-					if (region != null)
-						region.save();
+					future.complete(engine.capture(chunk));
 				} catch (Throwable e) {
-					getPlugin().getLogger().log(Level.SEVERE, "Failed to save region " + key, e);
+					future.completeExceptionally(e);
 				}
-				regions.remove(key);
-				toUnload.remove(key);
-			}
-		} finally {
-			unloadLock.unlock();
+			});
+		} catch (Throwable e) {
+			future.completeExceptionally(e);
 		}
+		return future;
 	}
 
 	@NonNull
-	public CompletableFuture<@NonNull Boolean> save(Chunk chunk, boolean overwrite) {
-		CompletableFuture<Boolean> future = new CompletableFuture<>();
-		plugin.getService().submit(() -> {
-			future.complete(get(chunk.getX() >> 5, chunk.getZ() >> 5)
-					.save(chunk, overwrite));
-		});
-		return future;
+	@ChunkCoordinates
+	public CompletableFuture<@NonNull Boolean> load(int x, int z, boolean delete) {
+		return pipeline.submit(x, z, delete);
 	}
 
 	@NonNull
 	public CompletableFuture<@NonNull Boolean> load(Chunk chunk, boolean delete) {
-		CompletableFuture<Boolean> future = new CompletableFuture<>();
-		plugin.getService().submit(() -> {
-			future.complete(get(chunk.getX() >> 5, chunk.getZ() >> 5)
-					.load(chunk, delete));
-		});
-		return future;
+		return pipeline.submit(chunk.getX(), chunk.getZ(), delete);
 	}
 
+	private CompletableFuture<Boolean> withTicket(Chunk chunk, Supplier<CompletableFuture<Boolean>> task) {
+		chunk.addPluginChunkTicket(plugin);
+		return task.get()
+				.whenComplete((changed, e) -> {
+					chunk.removePluginChunkTicket(plugin);
+					if (e != null)
+						plugin.getLogger().log(Level.SEVERE, "Failed to access region chunk " + chunk.getX() + ", " + chunk.getZ(), e);
+				});
+	}
+
+	/**
+	 * Marks every section referenced by a region of this world and drops the others from the section store.
+	 */
+	public void collectSections() {
+		if (closed.get() || !sections.needsCollection())
+			return;
+		long start = sections.begin();
+		Map<SectionStore.Hash, Integer> live = new HashMap<>();
+		Consumer<byte[]> mark = payload -> plugin.getEngine(payload).references(payload, hash -> live.merge(hash, 1, Integer::sum));
+		try {
+			Set<File> resident = new HashSet<>();
+			for (var region : resident()) {
+				resident.add(region.getFile().getFile());
+				region.payloads(mark);
+			}
+			for (var region : writing.values()) {
+				if (resident.add(region.getFile().getFile()))
+					region.payloads(mark);
+			}
+
+			File[] files = dataFolder.listFiles((dir, name) -> name.endsWith(".lz4b"));
+			if (files != null) {
+				for (var file : files) {
+					if (resident.contains(file) || RegionMigrator.isLegacy(file))
+						continue;
+					var regionFile = new RegionFile(file, plugin.getCodecs());
+					for (int i = 0; i < RegionFile.SLOTS; i++) {
+						var payload = regionFile.readWorld(i);
+						if (payload != null)
+							mark.accept(payload);
+					}
+				}
+			}
+
+			long size = sections.size();
+			int dropped = sections.collect(live, start);
+			if (dropped > 0) {
+				plugin.getLogger().info(String.format("Collected %d unreferenced sections of world %s, freed %d KiB",
+						dropped, world.getName(), (size - sections.size()) >> 10));
+			}
+		} catch (Throwable e) {
+			plugin.getLogger().log(Level.SEVERE, "Failed to collect sections of world " + world.getName(), e);
+		}
+	}
+
+	/**
+	 * Collects uncompressed mantle payloads spread over all region files of this world, to train a dictionary from.
+	 *
+	 * @param budget upper bound for the total size of the samples in bytes
+	 */
+	public List<byte[]> sampleMantle(long budget) throws IOException {
+		List<byte[]> samples = new ArrayList<>();
+		File[] files = dataFolder.listFiles((dir, name) -> name.endsWith(".lz4b"));
+		if (mantle == null || files == null || files.length == 0)
+			return samples;
+		long perFile = Math.max(1, budget / files.length);
+		long total = 0;
+		for (var file : files) {
+			if (total >= budget)
+				break;
+			if (RegionMigrator.isLegacy(file))
+				continue;
+			var regionFile = new RegionFile(file, plugin.getCodecs());
+			long taken = 0;
+			for (int i = 0; i < RegionFile.SLOTS && taken < perFile; i++) {
+				var payload = regionFile.readMantle(i);
+				if (payload == null)
+					continue;
+				byte[] raw = plugin.getCodecs().current().decompress(payload);
+				samples.add(raw);
+				taken += raw.length;
+			}
+			total += taken;
+		}
+		return samples;
+	}
+
+	/**
+	 * Writes all changed regions and the captured index, used when the world is unloaded.
+	 */
 	public void close() {
 		try {
-			trim(-1);
-			unload();
+			plugin.getFlusher().flush(detach());
 		} finally {
-			closed.set(true);
+			saveCaptured();
+		}
+	}
+
+	/**
+	 * Rejects further accesses and drops all regions from memory, without writing them.
+	 *
+	 * @return the regions with changes that still have to be written
+	 */
+	public List<Region> detach() {
+		closed.set(true);
+		collector.cancel();
+		indexer.cancel();
+		List<Region> dirty = new ArrayList<>();
+		for (var region : resident()) {
+			if (region.isDirty())
+				dirty.add(region);
 		}
+		for (var region : writing.values()) {
+			if (region.isDirty())
+				dirty.add(region);
+		}
+		regions.synchronous().invalidateAll();
+		return dirty;
 	}
 
+	/**
+	 * Returns the cached region or opens it on the I/O executor, never blocks the caller.
+	 */
 	@RegionCoordinates
-	private Region get(int x, int z) {
+	CompletableFuture<Region> acquire(int x, int z) {
 		if (closed.get())
-			throw new IllegalStateException("RegionManager is closed");
-		if (unloadLock.isLocked()) {
-			try {
-				return getSafe(x, z).get();
-			} catch (InterruptedException | ExecutionException e) {
-				getPlugin().getLogger().log(Level.WARNING, "Failed to get region", e);
-			}
+			return CompletableFuture.failedFuture(new IllegalStateException("RegionManager is closed"));
+		long key = key(x, z);
+		if (prefetched.remove(key) != null)
+			prefetchHits.increment();
+		else if (regions.getIfPresent(key) == null)
+			prefetchMisses.increment();
+		return load(key, x, z);
+	}
+
+	/**
+	 * Opens the region and reads all its stored slots ahead of the first chunk access, unless it
+	 * is held in memory already or has no backups.
+	 *
+	 * @return true if the region was read
+	 */
+	@RegionCoordinates
+	public CompletableFuture<@NonNull Boolean> prefetch(int x, int z) {
+		long key = key(x, z);
+		if (closed.get() || regions.getIfPresent(key) != null || prefetched.containsKey(key))
+			return CompletableFuture.completedFuture(false);
+		return CompletableFuture.supplyAsync(() -> new File(dataFolder, x + "_" + z + ".lz4b").exists(), plugin.getIo())
+				.thenCompose(exists -> {
+					if (!exists || closed.get() || regions.getIfPresent(key) != null || prefetched.putIfAbsent(key, System.nanoTime()) != null)
+						return CompletableFuture.completedFuture(false);
+					prefetchIssued.increment();
+					return load(key, x, z)
+							.thenCompose(region -> region.preload(region.stored(), plugin.getIo()))
+							.thenApply(region -> {
+								reweigh(region);
+								return true;
+							});
+				});
+	}
+
+	/**
+	 * Counts prefetched regions that were not accessed since the given time as wasted.
+	 */
+	public void expirePrefetches(long before) {
+		prefetched.entrySet().removeIf(entry -> {
+			if (entry.getValue() - before >= 0)
+				return false;
+			prefetchWasted.increment();
+			return true;
+		});
+	}
+
+	private CompletableFuture<Region> load(long key, int x, int z) {
+		return regions.get(key, (k, executor) -> {
+			Region region = writing.get(k);
+			return region != null
+					? CompletableFuture.completedFuture(region)
+					: CompletableFuture.supplyAsync(() -> open(x, z), plugin.getIo());
+		});
+	}
+
+	@RegionCoordinates
+	private Region open(int x, int z) {
+		var event = new Events.RegionOpen();
+		event.begin();
+		long start = System.nanoTime();
+		var region = new Region(this, x, z);
+		Metrics.REGION_OPEN.record(System.nanoTime() - start);
+		event.end();
+		if (event.shouldCommit()) {
+			event.world = world.getName();
+			event.regionX = x;
+			event.regionZ = z;
+			event.commit();
 		}
+		return region;
+	}
 
-		Region r = regions.get(Cache.key(x, z));
-		if (r != null)
-			return r;
+	/**
+	 * @return number of regions currently held in memory, including ones still loading
+	 */
+	public long residentCount() {
+		return regions.synchronous().estimatedSize();
+	}
 
-		try {
-			return getSafe(x, z).get();
-		} catch (ExecutionException | InterruptedException e) {
-			getPlugin().getLogger().log(Level.WARNING, "Failed to get region", e);
+	/**
+	 * Sums up the size of all backup files of this world, walks the directory so call it off the main thread.
+	 */
+	public long diskUsage() {
+		File[] files = dataFolder.listFiles();
+		if (files == null)
+			return 0;
+		long size = 0;
+		for (var file : files) {
+			if (file.isFile())
+				size += file.length();
 		}
-		return get(x, z);
+		return size;
 	}
 
-	@RegionCoordinates
-	private Future<Region> getSafe(int x, int z) {
-		long key = Cache.key(x, z);
-		Region r = regions.get(key);
-		if (r != null)
-			return CompletableFuture.completedFuture(r);
-
-		return plugin.getService().submit(() -> hyperLock.withResult(x, z, () -> {
-			Region region = regions.get(key);
-			if (region != null)
-				return region;
-			region = new Region(this, x, z);
-			regions.put(key, region);
-			return region;
-		}));
+	/**
+	 * @return the regions that finished loading
+	 */
+	private List<Region> resident() {
+		var resident = new ArrayList<Region>();
+		for (var future : regions.asMap().values()) {
+			if (future.isDone() && !future.isCompletedExceptionally())
+				resident.add(future.join());
+		}
+		return resident;
+	}
+
+	void reweigh(Region region) {
+		regions.synchronous().asMap().replace(key(region.getX(), region.getZ()), region, region);
+	}
+
+	static long key(int x, int z) {
+		return com.volmit.iris.engine.data.cache.Cache.key(x, z);
 	}
 
 	@RegionCoordinates
@@ -0,0 +1,113 @@
+package de.crazydev22.irislands.data;
+
+import com.volmit.iris.util.mantle.Mantle;
+import com.volmit.iris.util.mantle.MantleChunk;
+import de.crazydev22.irislands.codec.Codecs;
+import de.crazydev22.irislands.util.MantleSnapshot;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Upgrades region files written as a single {@link LZ4BlockInputStream} to the {@link RegionFile} format.
+ */
+public final class RegionMigrator {
+	private static final byte[] LEGACY_MAGIC = "LZ4Block".getBytes(StandardCharsets.US_ASCII);
+
+	private RegionMigrator() {}
+
+	public static boolean isLegacy(File file) throws IOException {
+		if (!file.isFile())
+			return false;
+		byte[] magic = new byte[LEGACY_MAGIC.length];
+		try (var in = new FileInputStream(file)) {
+			if (in.readNBytes(magic, 0, magic.length) != magic.length)
+				return false;
+		}
+		return Arrays.equals(magic, LEGACY_MAGIC);
+	}
+
+	/**
+	 * Converts the file and moves its chunks to their slots within the region.
+	 *
+	 * @return number of stored chunks dropped because they do not belong to the region
+	 */
+	public static int migrate(File file, @Nullable Mantle mantle, Codecs codecs) throws IOException {
+		int[] region = coordinates(file);
+		byte[][] mantleChunks = new byte[RegionFile.SLOTS][];
+		byte[][] worldChunks = new byte[RegionFile.SLOTS][];
+		int dropped = 0;
+		try (var din = new DataInputStream(new LZ4BlockInputStream(new FileInputStream(file)))) {
+			for (int i = 0; i < RegionFile.SLOTS; i++) {
+				byte[] mantleChunk = null, worldChunk = null;
+				if (din.readBoolean()) {
+					if (mantle == null)
+						throw new IOException("Cannot migrate mantle data without a mantle: " + file);
+					var chunk = new MantleChunk(mantle.getWorldHeight() >> 4, din);
+					mantleChunk = MantleSnapshot.capture(chunk, codecs.current());
+				}
+				if (din.readBoolean())
+					worldChunk = Base64.getDecoder().decode(din.readUTF());
+				if (mantleChunk == null && worldChunk == null)
+					continue;
+				int slot = remap(i, region[0], region[1]);
+				if (slot < 0) {
+					dropped++;
+					continue;
+				}
+				mantleChunks[slot] = mantleChunk;
+				worldChunks[slot] = worldChunk;
+			}
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+
+		RegionFile.empty(file, codecs).write(new RegionFile.Source() {
+			@Override
+			public boolean modified(int index) {
+				return true;
+			}
+
+			@Override
+			public byte[] mantle(int index) {
+				return mantleChunks[index];
+			}
+
+			@Override
+			public byte[] world(int index) {
+				return worldChunks[index];
+			}
+		});
+		return dropped;
+	}
+
+	/**
+	 * Legacy files stored a chunk at the slot {@code x + 32 * z} of its absolute chunk coordinates,
+	 * only region 0, 0 used the slots of its local coordinates.
+	 *
+	 * @return the slot of the chunk within the region, or -1 if no chunk of the region maps to the legacy slot
+	 */
+	static int remap(int legacy, int regionX, int regionZ) {
+		int localX = Math.floorMod(legacy - (regionX << 5), 32);
+		int x = (regionX << 5) + localX;
+		int localZ = (legacy - x) / 32 - (regionZ << 5);
+		if (localZ < 0 || localZ >= 32)
+			return -1;
+		return localX + (localZ << 5);
+	}
+
+	private static int[] coordinates(File file) throws IOException {
+		String name = file.getName();
+		int separator = name.indexOf('_');
+		int extension = name.indexOf('.', separator + 1);
+		try {
+			return new int[]{Integer.parseInt(name.substring(0, separator)), Integer.parseInt(name.substring(separator + 1, extension))};
+		} catch (RuntimeException e) {
+			throw new IOException("Region coordinates missing from file name: " + file, e);
+		}
+	}
+}
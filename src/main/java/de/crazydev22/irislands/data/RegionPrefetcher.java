@@ -0,0 +1,149 @@
+package de.crazydev22.irislands.data;
+
+import de.crazydev22.irislands.IrisLands;
+import de.crazydev22.irislands.metrics.Events;
+import de.crazydev22.irislands.metrics.StatsSource;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Reads the region files players are heading into before their chunks are loaded.
+ * <p>
+ * Player positions are sampled once per second and their velocity is smoothed over the samples.
+ * The path ahead of every player is extrapolated for the look-ahead time plus the view distance,
+ * regions along it are prefetched nearest first with a bounded number of reads in flight.
+ */
+public class RegionPrefetcher implements Runnable, StatsSource {
+	private static final int INTERVAL = 20;
+	private static final double SMOOTHING = 0.5;
+	private static final double STEP = 128;
+	/**
+	 * Faster movement is taken as a teleport and resets the velocity.
+	 */
+	private static final double MAX_SPEED = 100;
+	private final IrisLands plugin;
+	private final double lookAhead;
+	private final long wasteAfter;
+	private final Semaphore inFlight;
+	private final Map<UUID, Motion> motions = new HashMap<>();
+	private final LongAdder skipped = new LongAdder();
+	private BukkitTask task;
+
+	public RegionPrefetcher(IrisLands plugin, double lookAheadSeconds, int maxInFlight, long wasteAfterSeconds) {
+		this.plugin = plugin;
+		this.lookAhead = lookAheadSeconds;
+		this.wasteAfter = TimeUnit.SECONDS.toNanos(wasteAfterSeconds);
+		this.inFlight = new Semaphore(maxInFlight);
+	}
+
+	public void start() {
+		task = Bukkit.getScheduler().runTaskTimer(plugin, this, INTERVAL, INTERVAL);
+	}
+
+	public void stop() {
+		if (task != null)
+			task.cancel();
+		motions.clear();
+	}
+
+	@Override
+	public void report(List<String> lines) {
+		lines.add(String.format(" prefetch: %d passes cut short by the in-flight limit", skipped.sum()));
+	}
+
+	/**
+	 * Reports the ratios over all worlds, the per world counters are kept by their managers.
+	 */
+	@Override
+	public void report(Events.Stats event) {
+		long issued = 0, hits = 0, cold = 0, wasted = 0;
+		for (var manager : plugin.getManagers().values()) {
+			issued += manager.getPrefetchIssued().sum();
+			hits += manager.getPrefetchHits().sum();
+			cold += manager.getPrefetchHits().sum() + manager.getPrefetchMisses().sum();
+			wasted += manager.getPrefetchWasted().sum();
+		}
+		event.prefetchSkipped = skipped.sum();
+		event.prefetchHitRatio = cold == 0 ? 0 : (double) hits / cold;
+		event.prefetchWasteRatio = issued == 0 ? 0 : (double) wasted / issued;
+	}
+
+	@Override
+	public void run() {
+		long now = System.nanoTime();
+		Map<UUID, Motion> seen = new HashMap<>();
+		for (var entry : plugin.getManagers().entrySet()) {
+			var world = entry.getKey();
+			var manager = entry.getValue();
+			manager.expirePrefetches(now - wasteAfter);
+			double view = world.getViewDistance() * 16;
+			for (var player : world.getPlayers()) {
+				var location = player.getLocation();
+				var motion = update(motions.get(player.getUniqueId()), world, location.getX(), location.getZ(), now);
+				seen.put(player.getUniqueId(), motion);
+				prefetch(manager, motion, view);
+			}
+		}
+		motions.clear();
+		motions.putAll(seen);
+	}
+
+	private static Motion update(Motion last, World world, double x, double z, long now) {
+		if (last == null || last.world != world)
+			return new Motion(world, x, z, 0, 0, now);
+		double seconds = (now - last.time) / 1e9;
+		if (seconds <= 0)
+			return last;
+		double vx = (x - last.x) / seconds, vz = (z - last.z) / seconds;
+		if (vx * vx + vz * vz > MAX_SPEED * MAX_SPEED)
+			return new Motion(world, x, z, 0, 0, now);
+		return new Motion(world, x, z,
+				SMOOTHING * vx + (1 - SMOOTHING) * last.vx,
+				SMOOTHING * vz + (1 - SMOOTHING) * last.vz, now);
+	}
+
+	private void prefetch(RegionManager manager, Motion motion, double view) {
+		Map<Long, int[]> targets = new LinkedHashMap<>();
+		target(targets, motion.x, motion.z);
+		double speed = Math.sqrt(motion.vx * motion.vx + motion.vz * motion.vz);
+		if (speed >= 1) {
+			double distance = speed * lookAhead + view;
+			double dx = motion.vx / speed, dz = motion.vz / speed;
+			for (double d = STEP; d < distance + STEP; d += STEP) {
+				double step = Math.min(d, distance);
+				target(targets, motion.x + dx * step, motion.z + dz * step);
+			}
+		}
+
+		for (var target : targets.values()) {
+			if (!inFlight.tryAcquire()) {
+				skipped.increment();
+				return;
+			}
+			int x = target[0], z = target[1];
+			manager.prefetch(x, z).whenComplete((read, e) -> {
+				inFlight.release();
+				if (e != null)
+					plugin.getLogger().log(Level.WARNING, "Failed to prefetch region " + x + ", " + z + " of world " + manager.getWorld().getName(), e);
+			});
+		}
+	}
+
+	private static void target(Map<Long, int[]> targets, double blockX, double blockZ) {
+		int x = (int) Math.floor(blockX) >> 9, z = (int) Math.floor(blockZ) >> 9;
+		targets.putIfAbsent(RegionManager.key(x, z), new int[]{x, z});
+	}
+
+	private record Motion(World world, double x, double z, double vx, double vz, long time) {}
+}
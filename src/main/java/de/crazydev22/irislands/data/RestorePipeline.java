@@ -0,0 +1,238 @@
+package de.crazydev22.irislands.data;
+
+import com.volmit.iris.util.documentation.ChunkCoordinates;
+import com.volmit.iris.util.mantle.MantleChunk;
+import de.crazydev22.irislands.metrics.Events;
+import de.crazydev22.irislands.metrics.Metrics;
+import de.crazydev22.irislands.snapshot.SnapshotEngine;
+import lombok.Getter;
+import org.bukkit.Chunk;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Coalesces restore requests per region over a short window, decodes their payloads in
+ * parallel and applies them with one world write per snapshot engine and batch.
+ */
+public class RestorePipeline {
+	private final RegionManager manager;
+	private final Map<Long, Batch> pending = new ConcurrentHashMap<>();
+	@Getter
+	private final LongAdder batches = new LongAdder();
+	@Getter
+	private final LongAdder chunks = new LongAdder();
+	@Getter
+	private final LongAdder nanos = new LongAdder();
+
+	public RestorePipeline(RegionManager manager) {
+		this.manager = manager;
+	}
+
+	@ChunkCoordinates
+	public CompletableFuture<Boolean> submit(int x, int z, boolean delete) {
+		var settings = manager.getPlugin().getSettings();
+		var event = new Events.ChunkRestore();
+		event.begin();
+		long start = System.nanoTime();
+		var request = new Request(x, z, delete, new CompletableFuture<>());
+		int rx = x >> 5, rz = z >> 5;
+		int[] size = new int[1];
+		var batch = pending.compute(RegionManager.key(rx, rz), (key, b) -> {
+			if (b == null) b = new Batch(key, rx, rz);
+			b.requests.add(request);
+			size[0] = b.requests.size();
+			return b;
+		});
+		if (size[0] >= settings.getRestoreBatchSize()) {
+			flush(batch);
+		} else if (size[0] == 1) {
+			CompletableFuture.delayedExecutor(settings.getRestoreWindow(), TimeUnit.MILLISECONDS, manager.getPlugin().getService())
+					.execute(() -> flush(batch));
+		}
+		return request.future.whenComplete((changed, e) -> {
+			if (e != null)
+				return;
+			Metrics.CHUNK_RESTORE.record(System.nanoTime() - start);
+			event.end();
+			if (event.shouldCommit()) {
+				event.world = manager.getWorld().getName();
+				event.chunkX = x;
+				event.chunkZ = z;
+				event.changed = changed;
+				event.commit();
+			}
+		});
+	}
+
+	private void flush(Batch batch) {
+		if (!pending.remove(batch.key, batch))
+			return;
+		long start = System.nanoTime();
+		var plugin = manager.getPlugin();
+		Map<Long, Task> tasks = new LinkedHashMap<>();
+		for (var request : batch.requests)
+			tasks.computeIfAbsent(RegionManager.key(request.x, request.z), k -> new Task(request.x, request.z)).add(request);
+
+		CompletableFuture.allOf(tasks.values().stream()
+						.map(task -> manager.getWorld().getChunkAtAsync(task.x, task.z).thenAccept(chunk -> {
+							chunk.addPluginChunkTicket(plugin);
+							task.chunk = chunk;
+						}))
+						.toArray(CompletableFuture[]::new))
+				.thenCompose(v -> restore(batch, tasks.values()))
+				.whenComplete((v, e) -> {
+					for (var task : tasks.values()) {
+						if (task.chunk != null)
+							task.chunk.removePluginChunkTicket(plugin);
+						if (task.error != null)
+							plugin.getLogger().log(Level.SEVERE, "Failed to load region chunk " + task.x + ", " + task.z, task.error);
+						task.complete(e);
+					}
+					report(batch, tasks.size(), System.nanoTime() - start, e);
+				});
+	}
+
+	private CompletableFuture<Void> restore(Batch batch, Collection<Task> tasks) {
+		var plugin = manager.getPlugin();
+		int[] indices = tasks.stream().mapToInt(task -> Region.index(task.x, task.z)).toArray();
+		return manager.acquire(batch.x, batch.z)
+				.thenCompose(region -> region.preload(indices, plugin.getIo()))
+				.thenComposeAsync(region -> restore(batch, region, tasks), plugin.getService());
+	}
+
+	private CompletableFuture<Void> restore(Batch batch, Region region, Collection<Task> tasks) {
+		var plugin = manager.getPlugin();
+		var mantle = manager.getMantle();
+		var decoding = new ArrayList<CompletableFuture<Void>>();
+		var prepared = new ArrayList<Region.Prepared>(tasks.size());
+		for (var task : tasks) {
+			try {
+				var slot = region.prepare(task.chunk, task.delete);
+				prepared.add(slot);
+				task.payload = slot.payload();
+			} catch (Throwable e) {
+				task.error = e;
+			}
+		}
+		if (mantle != null) {
+			try {
+				int[] indices = new int[prepared.size()];
+				var chunks = new MantleChunk[prepared.size()];
+				for (int i = 0; i < indices.length; i++) {
+					indices[i] = prepared.get(i).index();
+					chunks[i] = prepared.get(i).mantle();
+				}
+				plugin.getWrapper().setChunks(mantle, batch.x, batch.z, indices, chunks);
+				for (var task : tasks)
+					task.changed = task.error == null;
+			} catch (Throwable e) {
+				for (var task : tasks) {
+					if (task.error == null)
+						task.error = e;
+					task.payload = null;
+				}
+			}
+		}
+
+		for (var task : tasks) {
+			if (task.payload == null)
+				continue;
+			decoding.add(CompletableFuture.runAsync(() -> {
+				try {
+					task.engine = plugin.getEngine(task.payload);
+					task.snapshot = task.engine.decode(task.chunk, task.payload);
+				} catch (Throwable e) {
+					task.error = e;
+				}
+			}, plugin.getService()));
+		}
+
+		return CompletableFuture.allOf(decoding.toArray(CompletableFuture[]::new))
+				.thenCompose(v -> {
+					Map<SnapshotEngine, List<SnapshotEngine.Snapshot>> groups = new HashMap<>();
+					for (var task : tasks) {
+						if (task.snapshot != null)
+							groups.computeIfAbsent(task.engine, k -> new ArrayList<>()).add(task.snapshot);
+					}
+					var applying = new ArrayList<CompletableFuture<Void>>();
+					for (var entry : groups.entrySet()) {
+						try {
+							applying.add(entry.getKey().apply(entry.getValue()));
+						} catch (Throwable e) {
+							throw new CompletionException(e);
+						}
+					}
+					return CompletableFuture.allOf(applying.toArray(CompletableFuture[]::new));
+				})
+				.thenRun(() -> {
+					for (var task : tasks) {
+						if (task.snapshot == null)
+							continue;
+						region.restored(task.chunk, task.payload, task.delete);
+						task.changed = true;
+					}
+				})
+				.whenComplete((v, e) -> {
+					manager.reweigh(region);
+					manager.scheduleFlush(region);
+				});
+	}
+
+	private void report(Batch batch, int size, long time, Throwable error) {
+		batches.increment();
+		chunks.add(size);
+		nanos.add(time);
+		var plugin = manager.getPlugin();
+		if (error != null) {
+			plugin.getLogger().log(Level.SEVERE, "Failed to restore batch of region " + batch.x + ", " + batch.z, error);
+		} else if (plugin.getSettings().isRestoreLog()) {
+			double millis = time / 1e6;
+			plugin.getLogger().info(String.format("Restored %d chunks of region %d, %d in %.1f ms (%.0f chunks/s)",
+					size, batch.x, batch.z, millis, size / Math.max(millis, 0.001) * 1000));
+		}
+	}
+
+	private record Request(int x, int z, boolean delete, CompletableFuture<Boolean> future) {}
+
+	private record Batch(long key, int x, int z, List<Request> requests) {
+		private Batch(long key, int x, int z) {
+			this(key, x, z, new ArrayList<>());
+		}
+	}
+
+	private static class Task {
+		private final int x, z;
+		private final List<CompletableFuture<Boolean>> futures = new ArrayList<>(1);
+		private boolean delete;
+		private Chunk chunk;
+		private byte[] payload;
+		private SnapshotEngine engine;
+		private SnapshotEngine.Snapshot snapshot;
+		private volatile boolean changed;
+		private volatile Throwable error;
+
+		private Task(int x, int z) {
+			this.x = x;
+			this.z = z;
+		}
+
+		private void add(Request request) {
+			delete |= request.delete;
+			futures.add(request.future);
+		}
+
+		private void complete(Throwable batchError) {
+			var e = error != null ? error : batchError;
+			for (var future : futures) {
+				if (e != null) future.completeExceptionally(e);
+				else future.complete(changed);
+			}
+		}
+	}
+}
@@ -0,0 +1,345 @@
+package de.crazydev22.irislands.data;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Content addressed store for chunk sections shared by all regions of a world.
+ * <p>
+ * Layout: one {@code hash, length} record per section followed by its LZ4 compressed bytes.
+ * Sections are addressed by the first 128 bits of the SHA-256 of their uncompressed bytes,
+ * so identical sections are stored once no matter how many slots reference them.
+ * <p>
+ * Reference counts are only used to decide when collecting is worth it. {@link #collect(Map, long)}
+ * drops a section once a full mark of all regions found no reference to it.
+ * <p>
+ * Appends are not synced on their own, {@link #sync()} runs as part of every region group commit
+ * so that no committed slot references a section that could still be lost.
+ */
+public class SectionStore {
+	private static final int RECORD_SIZE = 20;
+	private static final long COLLECT_THRESHOLD = 1 << 20;
+	private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Object appendLock = new Object();
+	@Getter
+	private final File file;
+	private final Map<Hash, Entry> entries = new ConcurrentHashMap<>();
+	private final Cache<Hash, Object> decoded;
+	private final AtomicLong epoch = new AtomicLong();
+	private final AtomicLong garbage = new AtomicLong();
+	private volatile boolean counted;
+	private volatile long size;
+	private long synced;
+
+	public SectionStore(File file, long cacheSize) throws IOException {
+		this.file = file;
+		this.decoded = Caffeine.newBuilder()
+				.maximumSize(cacheSize)
+				.recordStats()
+				.build();
+		if (file.exists())
+			scan();
+		else counted = true;
+	}
+
+	private void scan() throws IOException {
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long length = channel.size();
+			long position = 0;
+			while (position + RECORD_SIZE <= length) {
+				var record = ByteBuffer.wrap(RegionFile.read(channel, position, RECORD_SIZE));
+				var hash = new Hash(record.getLong(), record.getLong());
+				int size = record.getInt();
+				if (size <= 0 || position + RECORD_SIZE + size > length)
+					break; // torn tail of an interrupted append
+				entries.putIfAbsent(hash, new Entry(position + RECORD_SIZE, size));
+				position += RECORD_SIZE + size;
+			}
+			size = synced = position;
+		}
+	}
+
+	/**
+	 * Stores the sections that are not known yet and takes one reference on every section.
+	 *
+	 * @return the hashes of the sections in the same order
+	 */
+	public Hash[] put(byte[][] sections) throws IOException {
+		var hashes = new Hash[sections.length];
+		for (int i = 0; i < sections.length; i++)
+			hashes[i] = hash(sections[i]);
+
+		lock.readLock().lock();
+		try {
+			long now = epoch.get();
+			var resolved = new Entry[sections.length];
+			boolean missing = false;
+			for (int i = 0; i < sections.length; i++)
+				missing |= (resolved[i] = entries.get(hashes[i])) == null;
+			if (missing)
+				append(sections, hashes, resolved);
+
+			for (var entry : resolved) {
+				entry.refs.incrementAndGet();
+				entry.epoch = now;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return hashes;
+	}
+
+	private void append(byte[][] sections, Hash[] hashes, Entry[] resolved) throws IOException {
+		synchronized (appendLock) {
+			var parent = file.getParentFile();
+			if (!parent.exists() && !parent.mkdirs())
+				throw new IOException("Failed to create directory: " + parent);
+			try (var out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				long position = size;
+				if (out.size() > position)
+					out.truncate(position);
+				for (int i = 0; i < sections.length; i++) {
+					if (resolved[i] != null || (resolved[i] = entries.get(hashes[i])) != null)
+						continue;
+					byte[] compressed = RegionFile.compress(sections[i]);
+					var record = ByteBuffer.allocate(RECORD_SIZE + compressed.length);
+					record.putLong(hashes[i].high).putLong(hashes[i].low).putInt(compressed.length).put(compressed);
+					RegionFile.write(out, position, record.flip());
+
+					resolved[i] = new Entry(position + RECORD_SIZE, compressed.length);
+					entries.put(hashes[i], resolved[i]);
+					position += record.limit();
+					size = position;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forces all appended sections to disk.
+	 */
+	public void sync() throws IOException {
+		lock.readLock().lock();
+		try {
+			synchronized (appendLock) {
+				if (synced >= size || !file.exists())
+					return;
+				long target = size;
+				try (var out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+					out.force(false);
+				}
+				synced = target;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Drops one reference taken by {@link #put(byte[][])}.
+	 */
+	public void release(Hash hash) {
+		var entry = entries.get(hash);
+		if (entry != null && entry.refs.getAndUpdate(refs -> Math.max(0, refs - 1)) == 1)
+			garbage.addAndGet(RECORD_SIZE + entry.length);
+	}
+
+	public byte[] read(Hash hash) throws IOException {
+		lock.readLock().lock();
+		try {
+			var entry = entries.get(hash);
+			if (entry == null)
+				throw new IOException("Missing section " + hash + " in " + file);
+			try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				return RegionFile.decompress(RegionFile.read(channel, entry.offset, entry.length));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the decoded section, shared between all callers asking for the same hash.
+	 * The result must not be modified.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(Hash hash, Decoder<T> decoder) throws IOException {
+		try {
+			return (T) decoded.get(hash, key -> {
+				try {
+					return decoder.decode(read(key));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	public boolean needsCollection() {
+		return size > 0 && (!counted || garbage.get() > Math.max(COLLECT_THRESHOLD, size / 4));
+	}
+
+	/**
+	 * Starts a collection, sections taken after this call are kept even if the mark did not see them.
+	 *
+	 * @return the epoch to pass to {@link #collect(Map, long)}
+	 */
+	public long begin() {
+		return epoch.getAndIncrement();
+	}
+
+	/**
+	 * Rewrites the store without the sections that are neither in the marked set nor
+	 * were taken since the collection began.
+	 *
+	 * @param live  number of references per section found by the mark
+	 * @param start the epoch returned by {@link #begin()}
+	 * @return the number of dropped sections
+	 */
+	public int collect(Map<Hash, Integer> live, long start) throws IOException {
+		lock.writeLock().lock();
+		try {
+			var temp = new File(file.getPath() + ".tmp");
+			Map<Hash, Long> offsets = new HashMap<>();
+			List<Hash> dropped = new ArrayList<>();
+			long position = 0;
+			try (var out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				 var in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				for (var next : entries.entrySet()) {
+					var hash = next.getKey();
+					var entry = next.getValue();
+					if (!live.containsKey(hash) && entry.epoch < start) {
+						dropped.add(hash);
+						continue;
+					}
+
+					var record = ByteBuffer.allocate(RECORD_SIZE + entry.length);
+					record.putLong(hash.high).putLong(hash.low).putInt(entry.length)
+							.put(RegionFile.read(in, entry.offset, entry.length));
+					RegionFile.write(out, position, record.flip());
+					offsets.put(hash, position + RECORD_SIZE);
+					position += record.limit();
+				}
+				out.force(false);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			syncDirectory();
+			for (var hash : dropped) {
+				entries.remove(hash);
+				decoded.invalidate(hash);
+			}
+			offsets.forEach((hash, offset) -> {
+				var entry = entries.get(hash);
+				entry.offset = offset;
+				entry.refs.set(live.getOrDefault(hash, entry.refs.get()));
+			});
+			size = synced = position;
+			garbage.set(0);
+			counted = true;
+			return dropped.size();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Forgets all sections, the file itself is removed together with the backups folder.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			entries.clear();
+			decoded.invalidateAll();
+			garbage.set(0);
+			size = synced = 0;
+			counted = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void syncDirectory() {
+		try (var channel = FileChannel.open(file.getParentFile().toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException ignored) {
+			// not every platform can open directories, the rename is still atomic there
+		}
+	}
+
+	public int count() {
+		return entries.size();
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public static Hash hash(byte[] data) {
+		var digest = ByteBuffer.wrap(DIGEST.get().digest(data));
+		return new Hash(digest.getLong(), digest.getLong());
+	}
+
+	public record Hash(long high, long low) {
+		public static final int BYTES = 16;
+
+		public static Hash read(ByteBuffer buffer) {
+			return new Hash(buffer.getLong(), buffer.getLong());
+		}
+
+		public ByteBuffer write(ByteBuffer buffer) {
+			return buffer.putLong(high).putLong(low);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%016x%016x", high, low);
+		}
+	}
+
+	@FunctionalInterface
+	public interface Decoder<T> {
+		T decode(byte[] data) throws IOException;
+	}
+
+	private static final class Entry {
+		private final int length;
+		private final AtomicInteger refs = new AtomicInteger();
+		private volatile long offset;
+		private volatile long epoch;
+
+		private Entry(long offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
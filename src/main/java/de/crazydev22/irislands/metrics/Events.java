@@ -0,0 +1,130 @@
+package de.crazydev22.irislands.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * Custom JFR events, recorded with the other JFR events so they line up with GC and tick profiles.
+ */
+public final class Events {
+	private Events() {}
+
+	@Name("de.crazydev22.irislands.ChunkSave")
+	@Label("Chunk Save")
+	@Category({"IrisLands", "Chunk"})
+	@StackTrace(false)
+	public static class ChunkSave extends Event {
+		@Label("World")
+		public String world;
+		@Label("Chunk X")
+		public int chunkX;
+		@Label("Chunk Z")
+		public int chunkZ;
+		@Label("Changed")
+		public boolean changed;
+	}
+
+	@Name("de.crazydev22.irislands.ChunkRestore")
+	@Label("Chunk Restore")
+	@Category({"IrisLands", "Chunk"})
+	@StackTrace(false)
+	public static class ChunkRestore extends Event {
+		@Label("World")
+		public String world;
+		@Label("Chunk X")
+		public int chunkX;
+		@Label("Chunk Z")
+		public int chunkZ;
+		@Label("Changed")
+		public boolean changed;
+	}
+
+	@Name("de.crazydev22.irislands.RegionOpen")
+	@Label("Region Open")
+	@Category({"IrisLands", "Region"})
+	@StackTrace(false)
+	public static class RegionOpen extends Event {
+		@Label("World")
+		public String world;
+		@Label("Region X")
+		public int regionX;
+		@Label("Region Z")
+		public int regionZ;
+	}
+
+	@Name("de.crazydev22.irislands.RegionFlush")
+	@Label("Region Flush")
+	@Category({"IrisLands", "Region"})
+	@StackTrace(false)
+	public static class RegionFlush extends Event {
+		@Label("World")
+		public String world;
+		@Label("Region X")
+		public int regionX;
+		@Label("Region Z")
+		public int regionZ;
+		@Label("Batch Size")
+		public int batchSize;
+	}
+
+	@Name("de.crazydev22.irislands.Compression")
+	@Label("Compression")
+	@Category({"IrisLands", "Codec"})
+	@StackTrace(false)
+	public static class Compression extends Event {
+		@Label("Codec")
+		public String codec;
+		@Label("Decompress")
+		public boolean decompress;
+		@Label("Input Size")
+		@DataAmount
+		public int inputSize;
+		@Label("Output Size")
+		@DataAmount
+		public int outputSize;
+	}
+
+	@Name("de.crazydev22.irislands.Stats")
+	@Label("IrisLands Statistics")
+	@Category("IrisLands")
+	@Period("1 s")
+	@StackTrace(false)
+	public static class Stats extends Event {
+		@Label("CPU Pool Queued")
+		public long cpuQueued;
+		@Label("I/O Queued")
+		public long ioQueued;
+		@Label("Apply Queued")
+		public long applyQueued;
+		@Label("Capture Queued")
+		public long captureQueued;
+		@Label("Captures Queued Total")
+		public long captureOffered;
+		@Label("Captures Rejected")
+		public long captureRejected;
+		@Label("Captures Done")
+		public long captureDone;
+		@Label("Last Apply Tick")
+		@Timespan(Timespan.NANOSECONDS)
+		public long applyLastTick;
+		@Label("Average Apply Tick")
+		@Timespan(Timespan.NANOSECONDS)
+		public long applyAverageTick;
+		@Label("Flush Batches")
+		public long flushBatches;
+		@Label("Regions Flushed")
+		public long flushRegions;
+		@Label("Regions Resident")
+		public long regionsResident;
+		@Label("Cache Hit Ratio")
+		@Percentage
+		public double cacheHitRatio;
+		@Label("Prefetch Hit Ratio")
+		@Percentage
+		public double prefetchHitRatio;
+		@Label("Prefetch Waste Ratio")
+		@Percentage
+		public double prefetchWasteRatio;
+		@Label("Prefetches Skipped")
+		public long prefetchSkipped;
+	}
+}
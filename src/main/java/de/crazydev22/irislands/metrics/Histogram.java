@@ -0,0 +1,94 @@
+package de.crazydev22.irislands.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram in nanoseconds. Every power of two is split into four buckets,
+ * so reported percentiles are upper bounds at most 25% above the recorded value.
+ */
+public class Histogram {
+	private static final int BUCKETS = 252;
+
+	@Getter
+	private final String name;
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public Histogram(String name) {
+		this.name = name;
+	}
+
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		buckets.incrementAndGet(bucket(nanos));
+		count.increment();
+		total.add(nanos);
+		if (nanos > max.get())
+			max.accumulateAndGet(nanos, Math::max);
+	}
+
+	public long count() {
+		return count.sum();
+	}
+
+	public long mean() {
+		long count = count();
+		return count == 0 ? 0 : total.sum() / count;
+	}
+
+	public long max() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile between 0 and 1
+	 * @return upper bound of the bucket holding the percentile in nanoseconds
+	 */
+	public long percentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			count += snapshot[i] = buckets.get(i);
+		if (count == 0)
+			return 0;
+		long rank = (long) Math.ceil(percentile * count);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank)
+				return Math.min(upper(i), max());
+		}
+		return max();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets.set(i, 0);
+		count.reset();
+		total.reset();
+		max.set(0);
+	}
+
+	private static int bucket(long nanos) {
+		if (nanos < 4)
+			return (int) nanos;
+		int exp = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exp - 2)) & 3;
+		return (exp - 1) * 4 + sub;
+	}
+
+	private static long upper(int bucket) {
+		if (bucket < 4)
+			return bucket;
+		int exp = bucket / 4 + 1;
+		int sub = bucket & 3;
+		return ((4L | sub) + 1 << (exp - 2)) - 1;
+	}
+}
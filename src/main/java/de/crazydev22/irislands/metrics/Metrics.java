@@ -0,0 +1,35 @@
+package de.crazydev22.irislands.metrics;
+
+import java.util.List;
+
+/**
+ * Process wide latency histograms, reported by {@code /irislands stats}.
+ */
+public final class Metrics {
+	public static final Histogram CHUNK_SAVE = new Histogram("chunk save");
+	public static final Histogram CHUNK_RESTORE = new Histogram("chunk restore");
+	public static final Histogram REGION_OPEN = new Histogram("region open");
+	public static final Histogram REGION_FLUSH = new Histogram("region flush");
+	public static final Histogram COMPRESSION = new Histogram("compression");
+	public static final List<Histogram> HISTOGRAMS = List.of(CHUNK_SAVE, CHUNK_RESTORE, REGION_OPEN, REGION_FLUSH, COMPRESSION);
+
+	private Metrics() {}
+
+	public static String format(Histogram histogram) {
+		return String.format("%s: %d ops, mean %s, p50 %s, p99 %s, max %s",
+				histogram.getName(), histogram.count(), millis(histogram.mean()),
+				millis(histogram.percentile(0.5)), millis(histogram.percentile(0.99)), millis(histogram.max()));
+	}
+
+	public static String millis(long nanos) {
+		return String.format("%.2f ms", nanos / 1e6);
+	}
+
+	public static String bytes(long bytes) {
+		if (bytes < 1 << 20)
+			return String.format("%.1f KiB", bytes / 1024.0);
+		if (bytes < 1 << 30)
+			return String.format("%.1f MiB", bytes / (double) (1 << 20));
+		return String.format("%.2f GiB", bytes / (double) (1 << 30));
+	}
+}
@@ -0,0 +1,19 @@
+package de.crazydev22.irislands.metrics;
+
+import java.util.List;
+
+/**
+ * Component reporting its own counters to {@code /irislands stats} and the periodic {@link Events.Stats} event.
+ */
+public interface StatsSource {
+
+	/**
+	 * Adds the lines shown by {@code /irislands stats}, called on the main thread.
+	 */
+	void report(List<String> lines);
+
+	/**
+	 * Fills the fields of the periodic event, called on the JFR periodic thread.
+	 */
+	void report(Events.Stats event);
+}
@@ -0,0 +1,267 @@
+package de.crazydev22.irislands.snapshot;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.volmit.iris.core.tools.IrisToolbelt;
+import com.volmit.iris.engine.framework.Engine;
+import com.volmit.iris.util.hunk.Hunk;
+import de.crazydev22.irislands.data.RegionFile;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.block.data.BlockData;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Stores only the blocks that differ from what the Iris engine of the world generates for the chunk.
+ * <p>
+ * Layout: {@code magic, generator} followed by the LZ4 compressed {@code version, minY, height, palette, count}
+ * and {@code position, paletteIndex} per changed block. A chunk matching its generated terrain is
+ * stored without the compressed part and restored by regenerating it. Worlds without an Iris engine
+ * fall back to the {@link PaletteEngine}.
+ * <p>
+ * A delta is only meaningful against the exact terrain it was taken from. {@code generator} is a
+ * fingerprint of the world seed, the dimension and every file of the pack, computed once per engine,
+ * and payloads taken with another fingerprint are refused instead of being applied onto different
+ * terrain. A pack hotloaded into a running engine is only picked up after a restart.
+ * <p>
+ * The base terrain comes from {@code Engine.generate} on the CPU pool, the same entry point Paper's
+ * worldgen threads call concurrently. Its mantle stages only run for mantle chunks that were not
+ * generated yet, which a loaded chunk and a chunk whose mantle was restored before decoding are not,
+ * so the mantle of the backed up world is left as it is. The generated terrain includes the
+ * decorations Iris places during generation but none of the later Bukkit populators, whatever
+ * differs is stored as part of the delta. Bases are cached for one restore batch so a chunk captured
+ * and restored in quick succession, as a bulk job does, is generated once.
+ */
+public class DeltaEngine implements SnapshotEngine {
+	private static final int MAGIC = 0x494C4453; // ILDS
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 12;
+	private static final int[] IDENTITY = new int[PaletteEngine.SECTION_SIZE];
+
+	static {
+		Arrays.setAll(IDENTITY, i -> i);
+	}
+
+	private final PaletteEngine palette;
+	private final Cache<Base, BlockData[]> bases;
+	private final Map<Engine, Long> fingerprints = Collections.synchronizedMap(new WeakHashMap<>());
+
+	/**
+	 * @param batchSize chunks per restore batch, the number of generated bases kept
+	 */
+	public DeltaEngine(PaletteEngine palette, int batchSize) {
+		this.palette = palette;
+		this.bases = Caffeine.newBuilder()
+				.maximumSize(batchSize)
+				.expireAfterAccess(Duration.ofSeconds(30))
+				.build();
+	}
+
+	@Override
+	public boolean accepts(byte[] data) {
+		return data.length >= 4 && ByteBuffer.wrap(data).getInt() == MAGIC;
+	}
+
+	@Override
+	public Capture capture(Chunk chunk) throws IOException {
+		var engine = engine(chunk.getWorld());
+		if (engine == null || PaletteEngine.hasTileEntities(chunk))
+			return palette.capture(chunk);
+		var world = chunk.getWorld();
+		int x = chunk.getX(), z = chunk.getZ();
+		var snapshot = chunk.getChunkSnapshot(false, false, false);
+		return () -> encode(engine, world, x, z, snapshot);
+	}
+
+	private byte[] encode(Engine engine, World world, int chunkX, int chunkZ, ChunkSnapshot snapshot) throws IOException {
+		long fingerprint = fingerprint(engine, world);
+		var generated = generate(engine, world, chunkX, chunkZ, fingerprint);
+		int minY = world.getMinHeight();
+		int height = world.getMaxHeight() - minY;
+
+		Map<BlockData, Integer> ids = new HashMap<>();
+		var entries = new ArrayList<BlockData>();
+		int[] positions = new int[64];
+		int[] values = new int[64];
+		int count = 0;
+		for (int i = 0; i < generated.length; i++) {
+			var data = snapshot.getBlockData(i & 15, minY + (i >> 8), (i >> 4) & 15);
+			if (data.equals(generated[i]))
+				continue;
+			Integer id = ids.get(data);
+			if (id == null) {
+				id = entries.size();
+				ids.put(data, id);
+				entries.add(data);
+			}
+			if (count == positions.length) {
+				positions = Arrays.copyOf(positions, count << 1);
+				values = Arrays.copyOf(values, count << 1);
+			}
+			positions[count] = i;
+			values[count++] = id;
+		}
+		if (count == 0)
+			return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(fingerprint).array();
+
+		try (var bytes = new ByteArrayOutputStream(); var dos = new DataOutputStream(bytes)) {
+			dos.writeInt(VERSION);
+			dos.writeInt(minY);
+			dos.writeInt(height);
+			dos.writeInt(entries.size());
+			for (var data : entries)
+				dos.writeUTF(data.getAsString());
+			dos.writeInt(count);
+			for (int i = 0; i < count; i++) {
+				dos.writeInt(positions[i]);
+				dos.writeInt(values[i]);
+			}
+			dos.flush();
+
+			byte[] compressed = RegionFile.compress(bytes.toByteArray());
+			return ByteBuffer.allocate(HEADER_SIZE + compressed.length)
+					.putInt(MAGIC)
+					.putLong(fingerprint)
+					.put(compressed)
+					.array();
+		}
+	}
+
+	@Override
+	public Snapshot decode(Chunk chunk, byte[] data) throws IOException {
+		var engine = engine(chunk.getWorld());
+		if (engine == null)
+			throw new IOException("Cannot restore a delta snapshot without an Iris engine");
+
+		var world = chunk.getWorld();
+		if (data.length < HEADER_SIZE)
+			throw new IOException("Delta snapshot without generator fingerprint");
+		long fingerprint = fingerprint(engine, world);
+		if (ByteBuffer.wrap(data, 4, 8).getLong() != fingerprint)
+			throw new IOException("The Iris pack or seed of " + world.getName() + " changed since the delta snapshot was taken");
+
+		var blocks = generate(engine, world, chunk.getX(), chunk.getZ(), fingerprint).clone();
+		int minY = world.getMinHeight();
+		if (data.length > HEADER_SIZE) {
+			byte[] payload = Arrays.copyOfRange(data, HEADER_SIZE, data.length);
+			try (var din = new DataInputStream(new ByteArrayInputStream(RegionFile.decompress(payload)))) {
+				int version = din.readInt();
+				if (version != VERSION)
+					throw new IOException("Unsupported delta snapshot version " + version);
+				if (din.readInt() != minY || din.readInt() != blocks.length >> 8)
+					throw new IOException("World height changed since the delta snapshot was taken");
+				var entries = new BlockData[din.readInt()];
+				for (int i = 0; i < entries.length; i++)
+					entries[i] = palette.blockData(din.readUTF());
+				int count = din.readInt();
+				for (int i = 0; i < count; i++)
+					blocks[din.readInt()] = entries[din.readInt()];
+			}
+		}
+
+		var sections = new PaletteEngine.Section[blocks.length / PaletteEngine.SECTION_SIZE];
+		for (int s = 0; s < sections.length; s++) {
+			int from = s * PaletteEngine.SECTION_SIZE;
+			sections[s] = new PaletteEngine.Section(Arrays.copyOfRange(blocks, from, from + PaletteEngine.SECTION_SIZE), IDENTITY);
+		}
+		return new PaletteEngine.Sections(chunk, minY, sections);
+	}
+
+	@Override
+	public CompletableFuture<Void> apply(List<Snapshot> snapshots) {
+		return palette.apply(snapshots);
+	}
+
+	/**
+	 * @return the blocks Iris generates for the chunk, indexed by {@code (y - minY) << 8 | z << 4 | x},
+	 * shared with the cache and not to be modified
+	 */
+	private BlockData[] generate(Engine engine, World world, int chunkX, int chunkZ, long fingerprint) throws IOException {
+		var key = new Base(world.getUID(), fingerprint, chunkX, chunkZ);
+		var cached = bases.getIfPresent(key);
+		if (cached != null)
+			return cached;
+		var generated = generate(engine, world, chunkX, chunkZ);
+		bases.put(key, generated);
+		return generated;
+	}
+
+	private static BlockData[] generate(Engine engine, World world, int chunkX, int chunkZ) throws IOException {
+		int height = world.getMaxHeight() - world.getMinHeight();
+		Hunk<BlockData> blocks = Hunk.newArrayHunk(16, height, 16);
+		Hunk<Biome> biomes = Hunk.newArrayHunk(16, height, 16);
+		try {
+			engine.generate(chunkX << 4, chunkZ << 4, blocks, biomes, false);
+		} catch (Exception e) {
+			throw new IOException("Failed to generate chunk " + chunkX + ", " + chunkZ, e);
+		}
+
+		var air = Material.AIR.createBlockData();
+		var result = new BlockData[height << 8];
+		for (int i = 0; i < result.length; i++) {
+			var data = blocks.get(i & 15, i >> 8, (i >> 4) & 15);
+			result[i] = data != null ? data : air;
+		}
+		return result;
+	}
+
+	/**
+	 * Hashes the seed, the dimension key and the path and content of every file in the pack,
+	 * skipping hidden files and folders like Iris' caches.
+	 */
+	private long fingerprint(Engine engine, World world) throws IOException {
+		var cached = fingerprints.get(engine);
+		if (cached != null)
+			return cached;
+
+		var crc = new CRC32C();
+		crc.update(ByteBuffer.allocate(8).putLong(world.getSeed()).array());
+		crc.update(engine.getDimension().getLoadKey().getBytes(StandardCharsets.UTF_8));
+		long files = 0;
+		var root = engine.getData().getDataFolder().toPath();
+		try (Stream<Path> stream = Files.walk(root)) {
+			var paths = stream.filter(Files::isRegularFile)
+					.filter(path -> !hidden(root.relativize(path)))
+					.sorted()
+					.toList();
+			for (var path : paths) {
+				crc.update(root.relativize(path).toString().replace(File.separatorChar, '/').getBytes(StandardCharsets.UTF_8));
+				crc.update(Files.readAllBytes(path));
+				files++;
+			}
+		}
+		long fingerprint = files << 32 | crc.getValue();
+		fingerprints.put(engine, fingerprint);
+		return fingerprint;
+	}
+
+	private static boolean hidden(Path relative) {
+		for (var part : relative) {
+			if (part.toString().startsWith("."))
+				return true;
+		}
+		return false;
+	}
+
+	@Nullable
+	private static Engine engine(World world) {
+		var platform = IrisToolbelt.access(world);
+		return platform != null ? platform.getEngine() : null;
+	}
+
+	private record Base(UUID world, long fingerprint, int x, int z) {}
+}
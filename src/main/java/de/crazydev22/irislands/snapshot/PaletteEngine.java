@@ -0,0 +1,334 @@
+package de.crazydev22.irislands.snapshot;
+
+import de.crazydev22.irislands.IrisLands;
+import de.crazydev22.irislands.data.RegionFile;
+import de.crazydev22.irislands.data.SectionStore;
+import de.crazydev22.irislands.util.ApplyScheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Captures chunks from a {@link ChunkSnapshot} and stores every 16³ section as a
+ * block state palette with packed indices. Palettes hold no tile entity data, chunks with tile
+ * entities are captured by the fallback engine instead.
+ * <p>
+ * Layout: {@code magic} followed by the LZ4 compressed {@code version, minY, sections} and
+ * per section {@code paletteSize, palette, bits, indices}. Single state sections have no indices.
+ * <p>
+ * With section deduplication enabled the sections are put into the {@link SectionStore} of the world
+ * instead and the payload is the uncompressed {@code sharedMagic, version, minY, sections} followed
+ * by one section hash per section. Decoded shared sections come from the store's cache.
+ */
+public class PaletteEngine implements SnapshotEngine {
+	private static final int MAGIC = 0x494C5053; // ILPS
+	private static final int SHARED_MAGIC = 0x494C5044; // ILPD
+	private static final int VERSION = 1;
+	static final int SECTION_SIZE = 4096;
+
+	private final IrisLands plugin;
+	private final SnapshotEngine fallback;
+	private final Map<String, BlockData> blockData = new ConcurrentHashMap<>();
+
+	public PaletteEngine(IrisLands plugin, SnapshotEngine fallback) {
+		this.plugin = plugin;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public boolean accepts(byte[] data) {
+		if (data.length < 4)
+			return false;
+		int magic = ByteBuffer.wrap(data).getInt();
+		return magic == MAGIC || magic == SHARED_MAGIC;
+	}
+
+	@Override
+	public Capture capture(Chunk chunk) throws IOException {
+		if (hasTileEntities(chunk))
+			return fallback.capture(chunk);
+		var world = chunk.getWorld();
+		var snapshot = chunk.getChunkSnapshot(false, false, false);
+		return () -> encode(world, snapshot);
+	}
+
+	/**
+	 * Tile entity data like chest contents is only kept by the clipboard of the fallback engine.
+	 */
+	static boolean hasTileEntities(Chunk chunk) {
+		return chunk.getTileEntities(false).length > 0;
+	}
+
+	private byte[] encode(World world, ChunkSnapshot snapshot) throws IOException {
+		int minY = world.getMinHeight();
+		int sections = (world.getMaxHeight() - minY) >> 4;
+		var store = plugin.getSettings().isSectionDedup() ? store(world) : null;
+
+		try (var bytes = new ByteArrayOutputStream(); var dos = new DataOutputStream(bytes);
+			 var section = new ByteArrayOutputStream(); var out = new DataOutputStream(section)) {
+			dos.writeInt(VERSION);
+			dos.writeInt(minY);
+			dos.writeInt(sections);
+
+			byte[][] shared = store != null ? new byte[sections][] : null;
+			Map<BlockData, Integer> ids = new HashMap<>();
+			var palette = new ArrayList<BlockData>();
+			int[] indices = new int[SECTION_SIZE];
+			for (int s = 0; s < sections; s++) {
+				section.reset();
+				int baseY = minY + (s << 4);
+				BlockData single = snapshot.isSectionEmpty(s) ? single(snapshot, baseY) : null;
+				if (single != null) {
+					out.writeShort(1);
+					out.writeUTF(single.getAsString());
+				} else {
+					ids.clear();
+					palette.clear();
+					for (int i = 0; i < SECTION_SIZE; i++) {
+						var data = snapshot.getBlockData(i & 15, baseY + (i >> 8), (i >> 4) & 15);
+						Integer id = ids.get(data);
+						if (id == null) {
+							id = palette.size();
+							ids.put(data, id);
+							palette.add(data);
+						}
+						indices[i] = id;
+					}
+
+					out.writeShort(palette.size());
+					for (var data : palette)
+						out.writeUTF(data.getAsString());
+					if (palette.size() > 1) {
+						int bits = bits(palette.size());
+						out.writeByte(bits);
+						for (long word : pack(indices, bits))
+							out.writeLong(word);
+					}
+				}
+				out.flush();
+				if (shared != null) shared[s] = section.toByteArray();
+				else section.writeTo(dos);
+			}
+			dos.flush();
+
+			if (shared != null) {
+				var hashes = store.put(shared);
+				var buffer = ByteBuffer.allocate(16 + hashes.length * SectionStore.Hash.BYTES)
+						.putInt(SHARED_MAGIC)
+						.putInt(VERSION)
+						.putInt(minY)
+						.putInt(hashes.length);
+				for (var hash : hashes)
+					hash.write(buffer);
+				return buffer.array();
+			}
+
+			byte[] compressed = RegionFile.compress(bytes.toByteArray());
+			return ByteBuffer.allocate(4 + compressed.length)
+					.putInt(MAGIC)
+					.put(compressed)
+					.array();
+		}
+	}
+
+	/**
+	 * Sections without blocks can still mix air, cave air and void air.
+	 *
+	 * @return the state of every block in the section, or null if it holds more than one
+	 */
+	@Nullable
+	private static BlockData single(ChunkSnapshot snapshot, int baseY) {
+		var first = snapshot.getBlockData(0, baseY, 0);
+		for (int i = 1; i < SECTION_SIZE; i++) {
+			if (!snapshot.getBlockData(i & 15, baseY + (i >> 8), (i >> 4) & 15).equals(first))
+				return null;
+		}
+		return first;
+	}
+
+	@Override
+	public CompletableFuture<Void> apply(List<Snapshot> snapshots) {
+		var scheduler = plugin.getApplyScheduler();
+		var futures = new CompletableFuture[snapshots.size()];
+		for (int i = 0; i < futures.length; i++) {
+			var sections = (Sections) snapshots.get(i);
+			var chunk = sections.chunk;
+			futures[i] = scheduler.submit(chunk.getWorld(), chunk.getX(), chunk.getZ(), new Apply(sections));
+		}
+		return CompletableFuture.allOf(futures);
+	}
+
+	@Override
+	public Snapshot decode(Chunk chunk, byte[] data) throws IOException {
+		if (ByteBuffer.wrap(data).getInt() == SHARED_MAGIC)
+			return decodeShared(chunk, data);
+
+		byte[] payload = new byte[data.length - 4];
+		System.arraycopy(data, 4, payload, 0, payload.length);
+		try (var din = new DataInputStream(new ByteArrayInputStream(RegionFile.decompress(payload)))) {
+			int version = din.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported palette snapshot version " + version);
+			int minY = din.readInt();
+			var sections = new Section[din.readInt()];
+			for (int s = 0; s < sections.length; s++)
+				sections[s] = readSection(din);
+			return new Sections(chunk, minY, sections);
+		}
+	}
+
+	private Snapshot decodeShared(Chunk chunk, byte[] data) throws IOException {
+		var store = store(chunk.getWorld());
+		if (store == null)
+			throw new IOException("No section store for world " + chunk.getWorld().getName());
+		var buffer = ByteBuffer.wrap(data, 4, data.length - 4);
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported palette snapshot version " + version);
+		int minY = buffer.getInt();
+		var sections = new Section[buffer.getInt()];
+		for (int s = 0; s < sections.length; s++) {
+			sections[s] = store.get(SectionStore.Hash.read(buffer),
+					bytes -> readSection(new DataInputStream(new ByteArrayInputStream(bytes))));
+		}
+		return new Sections(chunk, minY, sections);
+	}
+
+	@Override
+	public void references(byte[] data, Consumer<SectionStore.Hash> consumer) {
+		if (data.length < 16 || ByteBuffer.wrap(data).getInt() != SHARED_MAGIC)
+			return;
+		var buffer = ByteBuffer.wrap(data, 12, data.length - 12);
+		int count = buffer.getInt();
+		for (int s = 0; s < count; s++)
+			consumer.accept(SectionStore.Hash.read(buffer));
+	}
+
+	@Override
+	public void release(World world, byte[] data) {
+		var store = store(world);
+		if (store != null)
+			references(data, store::release);
+	}
+
+	private Section readSection(DataInputStream din) throws IOException {
+		var palette = new BlockData[din.readUnsignedShort()];
+		for (int i = 0; i < palette.length; i++)
+			palette[i] = blockData(din.readUTF());
+		int[] indices = null;
+		if (palette.length > 1) {
+			int bits = din.readUnsignedByte();
+			long[] words = new long[words(bits)];
+			for (int i = 0; i < words.length; i++)
+				words[i] = din.readLong();
+			indices = unpack(words, bits);
+		}
+		return new Section(palette, indices);
+	}
+
+	@Nullable
+	private SectionStore store(World world) {
+		var manager = plugin.getManagers().get(world);
+		return manager != null ? manager.getSections() : null;
+	}
+
+	BlockData blockData(String data) {
+		return blockData.computeIfAbsent(data, Bukkit::createBlockData);
+	}
+
+	/**
+	 * Writes the blocks that differ from the stored snapshot one section per step. The chunk is
+	 * snapshotted once on the first step to find the differing blocks, each of them is compared
+	 * against the live block again right before it is written so blocks changed in the meantime
+	 * are not written twice. Blocks that only start to differ after the first step are left as they
+	 * are. Bukkit has no bulk section write, the differing blocks of a section
+	 * are written in one pass without physics.
+	 */
+	private static final class Apply implements ApplyScheduler.Step {
+		private final Sections sections;
+		private final int[] changed = new int[SECTION_SIZE];
+		private ChunkSnapshot current;
+		private int next;
+
+		private Apply(Sections sections) {
+			this.sections = sections;
+		}
+
+		@Override
+		public boolean run() {
+			var chunk = sections.chunk;
+			int minY = chunk.getWorld().getMinHeight();
+			int maxY = chunk.getWorld().getMaxHeight();
+			int s = next++;
+			if (s >= sections.sections.length)
+				return true;
+
+			int baseY = sections.minY + (s << 4);
+			if (baseY >= minY && baseY + 16 <= maxY) {
+				if (current == null)
+					current = chunk.getChunkSnapshot(false, false, false);
+				var section = sections.sections[s];
+				int count = 0;
+				for (int i = 0; i < SECTION_SIZE; i++) {
+					var target = section.palette[section.indices != null ? section.indices[i] : 0];
+					if (!current.getBlockData(i & 15, baseY + (i >> 8), (i >> 4) & 15).equals(target))
+						changed[count++] = i;
+				}
+				for (int c = 0; c < count; c++) {
+					int i = changed[c];
+					var target = section.palette[section.indices != null ? section.indices[i] : 0];
+					var block = chunk.getBlock(i & 15, baseY + (i >> 8), (i >> 4) & 15);
+					if (!block.getBlockData().equals(target))
+						block.setBlockData(target, false);
+				}
+			}
+			if (next < sections.sections.length)
+				return false;
+			current = null;
+			return true;
+		}
+	}
+
+	private static int bits(int size) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(size - 1));
+	}
+
+	private static int words(int bits) {
+		int perWord = 64 / bits;
+		return (SECTION_SIZE + perWord - 1) / perWord;
+	}
+
+	private static long[] pack(int[] indices, int bits) {
+		int perWord = 64 / bits;
+		long[] words = new long[words(bits)];
+		for (int i = 0; i < SECTION_SIZE; i++)
+			words[i / perWord] |= (long) indices[i] << (i % perWord * bits);
+		return words;
+	}
+
+	private static int[] unpack(long[] words, int bits) {
+		int perWord = 64 / bits;
+		long mask = (1L << bits) - 1;
+		int[] indices = new int[SECTION_SIZE];
+		for (int i = 0; i < SECTION_SIZE; i++)
+			indices[i] = (int) (words[i / perWord] >>> (i % perWord * bits) & mask);
+		return indices;
+	}
+
+	record Section(BlockData[] palette, int[] indices) {}
+
+	record Sections(Chunk chunk, int minY, Section[] sections) implements Snapshot {}
+}
@@ -0,0 +1,63 @@
+package de.crazydev22.irislands.snapshot;
+
+import de.crazydev22.irislands.data.SectionStore;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+public interface SnapshotEngine {
+
+	/**
+	 * @return whether the payload was written by this engine
+	 */
+	boolean accepts(byte[] data);
+
+	/**
+	 * Copies what the engine needs out of the live chunk, called on the main thread.
+	 * The returned capture is encoded off the main thread.
+	 */
+	Capture capture(Chunk chunk) throws IOException;
+
+	/**
+	 * Decodes a payload without touching the world, safe to call from any thread.
+	 */
+	Snapshot decode(Chunk chunk, byte[] data) throws IOException;
+
+	/**
+	 * Applies a batch of snapshots decoded by this engine to their chunks.
+	 */
+	CompletableFuture<Void> apply(List<Snapshot> snapshots) throws IOException;
+
+	/**
+	 * Reports every section of the {@link SectionStore} the payload references.
+	 */
+	default void references(byte[] data, Consumer<SectionStore.Hash> consumer) {}
+
+	/**
+	 * Called once a payload is no longer held by its slot.
+	 */
+	default void release(World world, byte[] data) {}
+
+	default CompletableFuture<Void> restore(Chunk chunk, byte[] data) throws IOException {
+		return apply(List.of(decode(chunk, data)));
+	}
+
+	interface Snapshot {
+		Chunk chunk();
+	}
+
+	@FunctionalInterface
+	interface Capture {
+		byte[] encode() throws IOException;
+	}
+
+	enum Type {
+		WORLDEDIT,
+		PALETTE,
+		DELTA
+	}
+}
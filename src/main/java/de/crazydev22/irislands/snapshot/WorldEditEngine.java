@@ -0,0 +1,104 @@
+package de.crazydev22.irislands.snapshot;
+
+import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.bukkit.BukkitWorld;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.extent.clipboard.io.BuiltInClipboardFormat;
+import com.sk89q.worldedit.function.operation.ForwardExtentCopy;
+import com.sk89q.worldedit.function.operation.Operations;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.session.ClipboardHolder;
+import org.bukkit.Chunk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Copies chunks through a WorldEdit {@link com.sk89q.worldedit.EditSession} and stores them as FAST clipboards.
+ */
+public class WorldEditEngine implements SnapshotEngine {
+
+	@Override
+	public boolean accepts(byte[] data) {
+		return true;
+	}
+
+	/**
+	 * FAWE reads the chunk on its own and safely off the main thread, so nothing is copied up front.
+	 */
+	@Override
+	public Capture capture(Chunk chunk) {
+		return () -> copy(chunk);
+	}
+
+	private byte[] copy(Chunk chunk) throws IOException {
+		var world = new BukkitWorld(chunk.getWorld());
+		try (var editSession = WorldEdit.getInstance().newEditSession(world)) {
+			var region = new CuboidRegion(world,
+					BlockVector3.at(chunk.getX() << 4, chunk.getWorld().getMinHeight(), chunk.getZ() << 4),
+					BlockVector3.at((chunk.getX() << 4) + 15, chunk.getWorld().getMaxHeight(), (chunk.getZ() << 4) + 15));
+			try (var clipboard = new BlockArrayClipboard(region)) {
+				var copy = new ForwardExtentCopy(editSession, region, clipboard, region.getMinimumPoint());
+				copy.setCopyingEntities(false);
+				copy.setCopyingBiomes(false);
+				Operations.complete(copy);
+				return toBytes(clipboard);
+			}
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public Snapshot decode(Chunk chunk, byte[] data) throws IOException {
+		return new Paste(chunk, fromBytes(data));
+	}
+
+	@Override
+	public CompletableFuture<Void> apply(List<Snapshot> snapshots) throws IOException {
+		if (snapshots.isEmpty())
+			return CompletableFuture.completedFuture(null);
+		var world = new BukkitWorld(snapshots.get(0).chunk().getWorld());
+		try (var editSession = WorldEdit.getInstance().newEditSession(world)) {
+			for (var snapshot : snapshots) {
+				var chunk = snapshot.chunk();
+				var operation = new ClipboardHolder(((Paste) snapshot).clipboard())
+						.createPaste(editSession)
+						.to(BlockVector3.at(chunk.getX() << 4, chunk.getWorld().getMinHeight(), chunk.getZ() << 4))
+						.ignoreAirBlocks(false)
+						.copyEntities(false)
+						.copyBiomes(false)
+						.build();
+				Operations.complete(operation);
+			}
+		} catch (Exception e) {
+			throw new IOException(e);
+		} finally {
+			for (var snapshot : snapshots)
+				((Paste) snapshot).clipboard().close();
+		}
+		return CompletableFuture.completedFuture(null);
+	}
+
+	public static byte[] toBytes(Clipboard clipboard) throws IOException {
+		try (var out = new ByteArrayOutputStream()) {
+			clipboard.save(out, BuiltInClipboardFormat.FAST);
+			return out.toByteArray();
+		}
+	}
+
+	public static Clipboard fromBytes(byte[] data) throws IOException {
+		try (var reader = BuiltInClipboardFormat.FAST.getReader(new ByteArrayInputStream(data))) {
+			return reader.read();
+		}
+	}
+
+	private record Paste(Chunk chunk, Clipboard clipboard) implements Snapshot {}
+}
@@ -0,0 +1,311 @@
+package de.crazydev22.irislands.tool;
+
+import de.crazydev22.irislands.codec.Codec;
+import de.crazydev22.irislands.codec.Codecs;
+import de.crazydev22.irislands.data.RegionFile;
+import de.crazydev22.irislands.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline maintenance of backup stores, runs without a server:
+ * <pre>
+ * java -jar IrisLands.jar &lt;stats|verify|compact|migrate&gt; [options] &lt;path&gt;...
+ * </pre>
+ * A path is a {@code backups} folder, a world folder or a server folder holding world folders.
+ * Files are processed in parallel, the store must not be in use by a running server while it is compacted or migrated.
+ * lz4-java is picked up from the server's library folder when the jar lies in {@code plugins},
+ * otherwise it has to be placed next to the jar.
+ */
+public final class StoreTool {
+	private static final String USAGE = """
+			Usage: java -jar IrisLands.jar <command> [options] <path>...
+			Commands:
+			  stats    print slot occupancy, bytes per chunk and the mantle/block split per world
+			  verify   check every slot against its checksum and decode its mantle payload
+			  compact  fold journals back into their files and drop dead space
+			  migrate  rewrite every file with the codec given by --codec, --level and --dictionary
+			Options:
+			  --threads <n>         files processed at the same time, defaults to the number of cores
+			  --dictionaries <dir>  trained compression dictionaries, defaults to plugins/IrisLands/dictionaries
+			  --regions             stats: print a line per region file
+			  --all                 compact: rewrite files without journal or dead space as well
+			  --codec <name>        migrate: lz4, lz4-hc or deflate
+			  --level <n>           compression level of rewritten files, defaults to 9
+			  --dictionary <id>     migrate: deflate dictionary id
+			A path is a backups folder, a world folder or a server folder. Stop the server before compacting or migrating.""";
+
+	private final Options options;
+	private final ExecutorService executor;
+	private final Codecs codecs;
+	private Map<Integer, byte[]> dictionaries = Map.of();
+
+	private StoreTool(Options options) {
+		this.options = options;
+		this.executor = Executors.newFixedThreadPool(options.threads);
+		this.codecs = new Codecs(options.level);
+	}
+
+	public static void main(String[] args) {
+		Options options;
+		try {
+			options = Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+			return;
+		}
+		int status;
+		var tool = new StoreTool(options);
+		try {
+			status = tool.run();
+		} catch (Throwable e) {
+			e.printStackTrace();
+			status = 2;
+		} finally {
+			tool.executor.shutdownNow();
+			tool.codecs.close();
+		}
+		System.exit(status);
+	}
+
+	private int run() throws IOException, InterruptedException {
+		loadDictionaries();
+		if (options.command.equals("migrate"))
+			codecs.select(codecs.create(options.codec, dictionary()));
+
+		List<File> stores = new ArrayList<>();
+		for (var path : options.paths)
+			findStores(path, stores, 2);
+		if (stores.isEmpty()) {
+			System.err.println("No backups folder found");
+			return 2;
+		}
+
+		int failed = 0;
+		for (var store : stores) {
+			File[] files = store.listFiles((dir, name) -> name.endsWith(".lz4b"));
+			if (files == null)
+				continue;
+			Arrays.sort(files, Comparator.comparing(File::getName));
+			List<Future<Report>> futures = new ArrayList<>(files.length);
+			for (var file : files)
+				futures.add(executor.submit(() -> process(file)));
+
+			var total = new Report(store.getAbsoluteFile().getParentFile().getName());
+			for (var future : futures) {
+				Report report;
+				try {
+					report = future.get();
+				} catch (ExecutionException e) {
+					throw new IOException(e.getCause());
+				}
+				if (options.regions || !report.errors.isEmpty())
+					print(report, "  ");
+				report.errors.forEach(error -> System.out.println("    " + error));
+				total.add(report);
+			}
+			failed += total.failed;
+			print(total, "");
+		}
+		return failed > 0 ? 1 : 0;
+	}
+
+	private Report process(File file) {
+		var report = new Report(file.getName());
+		report.files = 1;
+		try {
+			var region = new RegionFile(file, codecs);
+			switch (options.command) {
+				case "verify" -> {
+					for (int i = 0; i < RegionFile.SLOTS; i++) {
+						try {
+							region.verify(i);
+						} catch (IOException e) {
+							report.errors.add(e.getMessage());
+						}
+					}
+					long torn = region.tornJournalBytes();
+					if (torn > 0)
+						report.errors.add("Journal ends with " + Metrics.bytes(torn) + " of an interrupted append");
+				}
+				case "compact" -> {
+					if (options.all || region.getJournal().exists() || region.deadBytes() > 0)
+						rewrite(region, report);
+				}
+				case "migrate" -> {
+					if (!codecs.current().sameFormat(region.getCodec()) || region.getJournal().exists())
+						rewrite(region, report);
+				}
+				default -> {}
+			}
+			report.collect(region);
+		} catch (Throwable e) {
+			report.errors.add(e.getMessage() != null ? e.getMessage() : e.toString());
+		}
+		report.failed = report.errors.isEmpty() ? 0 : 1;
+		return report;
+	}
+
+	private static void rewrite(RegionFile region, Report report) throws IOException {
+		report.before = region.getFile().length() + region.getJournal().length();
+		region.compact();
+		report.rewritten = 1;
+	}
+
+	private static void print(Report report, String indent) {
+		long used = report.mantle + report.world;
+		var line = new StringBuilder(indent).append(report.name).append(String.format(Locale.ROOT,
+				": %d files, %d/%d slots used (%.1f%%), %s per chunk, mantle %s (%.1f%%), blocks %s, %s on disk, %s dead",
+				report.files, report.slots, report.files * RegionFile.SLOTS, percent(report.slots, report.files * (long) RegionFile.SLOTS),
+				Metrics.bytes(report.slots == 0 ? 0 : used / report.slots),
+				Metrics.bytes(report.mantle), percent(report.mantle, used), Metrics.bytes(report.world),
+				Metrics.bytes(report.disk), Metrics.bytes(report.dead)));
+		if (report.rewritten > 0)
+			line.append(String.format(Locale.ROOT, ", %d rewritten, %s freed", report.rewritten, Metrics.bytes(report.before - report.disk)));
+		if (report.failed > 0)
+			line.append(String.format(Locale.ROOT, ", %d damaged", report.failed));
+		System.out.println(line);
+	}
+
+	private static double percent(long part, long total) {
+		return total == 0 ? 0 : part * 100.0 / total;
+	}
+
+	private static void findStores(File path, List<File> stores, int depth) {
+		if (!path.isDirectory())
+			return;
+		if (path.getName().equals("backups")) {
+			stores.add(path);
+			return;
+		}
+		var backups = new File(path, "backups");
+		if (backups.isDirectory()) {
+			stores.add(backups);
+			return;
+		}
+		File[] children = depth > 0 ? path.listFiles(File::isDirectory) : null;
+		if (children == null)
+			return;
+		Arrays.sort(children, Comparator.comparing(File::getName));
+		for (var child : children)
+			findStores(child, stores, depth - 1);
+	}
+
+	private void loadDictionaries() throws IOException {
+		var folder = dictionaryFolder();
+		if (folder.isDirectory())
+			dictionaries = codecs.loadDictionaries(folder);
+		else if (options.dictionaries != null)
+			throw new IOException("Dictionary folder " + folder + " does not exist");
+	}
+
+	private byte[] dictionary() throws IOException {
+		if (options.dictionary == null)
+			return null;
+		var dictionary = dictionaries.get(Integer.parseUnsignedInt(options.dictionary, 16));
+		if (dictionary == null)
+			throw new IOException("Compression dictionary " + options.dictionary + " not found in " + dictionaryFolder());
+		return dictionary;
+	}
+
+	private File dictionaryFolder() {
+		return options.dictionaries != null ? options.dictionaries : new File("plugins/IrisLands/dictionaries");
+	}
+
+	private static final class Report {
+		private final String name;
+		private final List<String> errors = new ArrayList<>();
+		private long files, slots, mantle, world, disk, dead, before, rewritten, failed;
+
+		private Report(String name) {
+			this.name = name;
+		}
+
+		private void collect(RegionFile region) {
+			for (int i = 0; i < RegionFile.SLOTS; i++) {
+				if (!region.hasMantle(i) && !region.hasWorld(i))
+					continue;
+				slots++;
+				mantle += region.mantleLength(i);
+				world += region.worldLength(i);
+			}
+			disk = region.getFile().length() + region.getJournal().length();
+			dead = region.deadBytes();
+		}
+
+		private void add(Report other) {
+			files += other.files;
+			slots += other.slots;
+			mantle += other.mantle;
+			world += other.world;
+			disk += other.disk;
+			dead += other.dead;
+			before += other.rewritten > 0 ? other.before : 0;
+			rewritten += other.rewritten;
+			failed += other.failed;
+		}
+	}
+
+	private record Options(String command, List<File> paths, int threads, File dictionaries, boolean regions, boolean all,
+						   Codec.Type codec, int level, String dictionary) {
+
+		private static Options parse(String[] args) {
+			if (args.length == 0)
+				throw new IllegalArgumentException("Missing command");
+			String command = args[0].toLowerCase(Locale.ROOT);
+			if (!List.of("stats", "verify", "compact", "migrate").contains(command))
+				throw new IllegalArgumentException("Unknown command " + args[0]);
+			List<File> paths = new ArrayList<>();
+			int threads = Runtime.getRuntime().availableProcessors();
+			File dictionaries = null;
+			boolean regions = false, all = false;
+			Codec.Type codec = null;
+			int level = 9;
+			String dictionary = null;
+			try {
+				for (int i = 1; i < args.length; i++) {
+					switch (args[i]) {
+						case "--threads" -> threads = Math.max(1, Integer.parseInt(value(args, ++i)));
+						case "--dictionaries" -> dictionaries = new File(value(args, ++i));
+						case "--regions" -> regions = true;
+						case "--all" -> all = true;
+						case "--codec" -> codec = Codec.Type.byName(value(args, ++i));
+						case "--level" -> level = Integer.parseInt(value(args, ++i));
+						case "--dictionary" -> dictionary = value(args, ++i);
+						default -> {
+							if (args[i].startsWith("--"))
+								throw new IllegalArgumentException("Unknown option " + args[i]);
+							paths.add(new File(args[i]));
+						}
+					}
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid number: " + e.getMessage());
+			}
+			if (paths.isEmpty())
+				throw new IllegalArgumentException("Missing path");
+			if (command.equals("migrate") && codec == null)
+				throw new IllegalArgumentException("migrate needs --codec");
+			return new Options(command, paths, threads, dictionaries, regions, all, codec, level, dictionary);
+		}
+
+		private static String value(String[] args, int index) {
+			if (index >= args.length)
+				throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+			return args[index];
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package de.crazydev22.irislands.util;
+
+import de.crazydev22.irislands.metrics.Events;
+import de.crazydev22.irislands.metrics.Metrics;
+import de.crazydev22.irislands.metrics.StatsSource;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs world writes on the main thread within a per tick time budget. Pending jobs are
+ * ordered by their distance to the nearest player and whatever does not fit into a tick
+ * is deferred to the next one.
+ */
+public class ApplyScheduler implements Runnable, StatsSource {
+	private final Plugin plugin;
+	private final long budget;
+	private final Queue<Job> incoming = new ConcurrentLinkedQueue<>();
+	private final List<Job> jobs = new ArrayList<>();
+	private final AtomicInteger depth = new AtomicInteger();
+	private final LongAdder ticks = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+	private volatile long lastTickNanos;
+	private BukkitTask task;
+
+	public ApplyScheduler(Plugin plugin, long budgetMillis) {
+		this.plugin = plugin;
+		this.budget = budgetMillis * 1_000_000L;
+	}
+
+	public void start() {
+		task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1, 1);
+	}
+
+	public void stop() {
+		if (task != null)
+			task.cancel();
+		Job job;
+		while ((job = incoming.poll()) != null)
+			jobs.add(job);
+		for (var pending : jobs)
+			pending.future.completeExceptionally(new CancellationException("Apply scheduler stopped"));
+		jobs.clear();
+		depth.set(0);
+	}
+
+	public int getQueueDepth() {
+		return depth.get();
+	}
+
+	/**
+	 * @return the mean main thread time of all ticks that applied at least one job
+	 */
+	public long getAverageTickNanos() {
+		long count = ticks.sum();
+		return count == 0 ? 0 : nanos.sum() / count;
+	}
+
+	/**
+	 * Only the palette and delta engines apply through the scheduler, WorldEdit pastes are not counted.
+	 */
+	@Override
+	public void report(List<String> lines) {
+		lines.add(String.format(" apply (palette and delta engines only): %d queued, last tick %s, average %s over %d ticks",
+				getQueueDepth(), Metrics.millis(lastTickNanos), Metrics.millis(getAverageTickNanos()), ticks.sum()));
+	}
+
+	@Override
+	public void report(Events.Stats event) {
+		event.applyQueued = getQueueDepth();
+		event.applyLastTick = lastTickNanos;
+		event.applyAverageTick = getAverageTickNanos();
+	}
+
+	/**
+	 * Queues a job for the main thread. The step is called once per slot until it returns true.
+	 */
+	public CompletableFuture<Void> submit(World world, int chunkX, int chunkZ, Step step) {
+		var job = new Job(world, chunkX, chunkZ, step, new CompletableFuture<>());
+		depth.incrementAndGet();
+		incoming.add(job);
+		return job.future;
+	}
+
+	@Override
+	public void run() {
+		long start = System.nanoTime();
+		Job next;
+		while ((next = incoming.poll()) != null)
+			jobs.add(next);
+		if (jobs.isEmpty()) {
+			lastTickNanos = 0;
+			return;
+		}
+
+		prioritize();
+		int done = 0;
+		do {
+			var job = jobs.get(done);
+			try {
+				if (!job.step.run())
+					continue;
+				job.future.complete(null);
+			} catch (Throwable e) {
+				job.future.completeExceptionally(e);
+			}
+			done++;
+		} while (done < jobs.size() && System.nanoTime() - start < budget);
+		jobs.subList(0, done).clear();
+		depth.addAndGet(-done);
+
+		long time = System.nanoTime() - start;
+		lastTickNanos = time;
+		ticks.increment();
+		nanos.add(time);
+	}
+
+	private void prioritize() {
+		Map<World, List<Player>> players = new HashMap<>();
+		for (var job : jobs) {
+			long best = Long.MAX_VALUE;
+			for (var player : players.computeIfAbsent(job.world, World::getPlayers)) {
+				var location = player.getLocation();
+				long dx = (location.getBlockX() >> 4) - job.x;
+				long dz = (location.getBlockZ() >> 4) - job.z;
+				best = Math.min(best, dx * dx + dz * dz);
+			}
+			job.distance = best;
+		}
+		jobs.sort(Comparator.comparingLong(job -> job.distance));
+	}
+
+	@FunctionalInterface
+	public interface Step {
+		/**
+		 * @return true once the job is complete
+		 */
+		boolean run() throws Exception;
+	}
+
+	private static final class Job {
+		private final World world;
+		private final int x, z;
+		private final Step step;
+		private final CompletableFuture<Void> future;
+		private long distance;
+
+		private Job(World world, int x, int z, Step step, CompletableFuture<Void> future) {
+			this.world = world;
+			this.x = x;
+			this.z = z;
+			this.step = step;
+			this.future = future;
+		}
+	}
+}
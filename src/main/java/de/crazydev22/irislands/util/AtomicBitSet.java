@@ -0,0 +1,58 @@
+package de.crazydev22.irislands.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class AtomicBitSet {
+	private final AtomicLongArray words;
+	private final int size;
+
+	public AtomicBitSet(int size) {
+		this.size = size;
+		this.words = new AtomicLongArray((size + 63) >> 6);
+	}
+
+	public boolean get(int index) {
+		return (words.get(index >> 6) & (1L << index)) != 0;
+	}
+
+	public boolean set(int index) {
+		long mask = 1L << index;
+		return (words.getAndUpdate(index >> 6, w -> w | mask) & mask) == 0;
+	}
+
+	public boolean clear(int index) {
+		long mask = 1L << index;
+		return (words.getAndUpdate(index >> 6, w -> w & ~mask) & mask) != 0;
+	}
+
+	public boolean isEmpty() {
+		for (int i = 0; i < words.length(); i++) {
+			if (words.get(i) != 0)
+				return false;
+		}
+		return true;
+	}
+
+	public int cardinality() {
+		int count = 0;
+		for (int i = 0; i < words.length(); i++)
+			count += Long.bitCount(words.get(i));
+		return count;
+	}
+
+	public long getWord(int index) {
+		return words.get(index);
+	}
+
+	public void setWord(int index, long word) {
+		words.set(index, word);
+	}
+
+	public int wordCount() {
+		return words.length();
+	}
+
+	public int size() {
+		return size;
+	}
+}
@@ -20,7 +20,7 @@ public class Executor extends ForkJoinPool {
 						return worker;
 					}
 				}, null, false,
-				0, 0x7fff, 1, null, 60_000L, TimeUnit.MILLISECONDS);
+				0, Math.min(0x7fff, Runtime.getRuntime().availableProcessors() * 2), 1, pool -> true, 60_000L, TimeUnit.MILLISECONDS);
 	}
 
 	@Override
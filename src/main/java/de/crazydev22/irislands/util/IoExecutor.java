@@ -0,0 +1,40 @@
+package de.crazydev22.irislands.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Executor for blocking region file reads and writes, kept apart from the CPU bound {@link Executor}
+ * so waiting on the disk never starves compression and snapshot work.
+ */
+public final class IoExecutor {
+	private IoExecutor() {}
+
+	/**
+	 * @param threads number of platform threads, ignored when virtual threads are used
+	 * @param virtual use one virtual thread per task, requires Java 21 or newer
+	 */
+	public static ExecutorService create(String name, int threads, boolean virtual, Logger logger) {
+		if (virtual) {
+			try {
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				logger.warning("Virtual threads require Java 21 or newer, using " + threads + " I/O threads instead");
+			}
+		}
+
+		var counter = new AtomicInteger();
+		var executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+			var thread = new Thread(task, name + " " + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
@@ -0,0 +1,77 @@
+package de.crazydev22.irislands.util;
+
+import com.volmit.iris.util.mantle.MantleChunk;
+import de.crazydev22.irislands.codec.Codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Copies mantle chunks in and out of their stored form, {@link MantleChunk#write} output compressed
+ * with the configured {@link Codec}.
+ * <p>
+ * The stored form is the only copy a region keeps, so a chunk is serialized exactly once when it is
+ * captured and parsed once when it is restored. Both directions go through per thread buffers and
+ * only allocate the resulting array or chunk.
+ */
+public final class MantleSnapshot {
+	private static final int MAX_BUFFER = 4 << 20;
+	private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+	private MantleSnapshot() {}
+
+	public static byte[] capture(MantleChunk chunk, Codec codec) throws IOException {
+		var buffer = BUFFER.get();
+		try {
+			buffer.reset();
+			var dos = new DataOutputStream(buffer);
+			chunk.write(dos);
+			dos.flush();
+			return codec.compress(buffer.array(), 0, buffer.size());
+		} finally {
+			buffer.trim();
+		}
+	}
+
+	/**
+	 * @param codec a codec that {@link Codec#reads} the one the payload was compressed with
+	 */
+	public static MantleChunk restore(int sectionHeight, byte[] stored, Codec codec) throws IOException, ClassNotFoundException {
+		var buffer = BUFFER.get();
+		try {
+			int length = Codec.decompressedLength(stored);
+			byte[] raw = buffer.ensure(length);
+			codec.decompress(stored, raw);
+			try (var din = new DataInputStream(new ByteArrayInputStream(raw, 0, length))) {
+				return new MantleChunk(sectionHeight, din);
+			}
+		} finally {
+			buffer.trim();
+		}
+	}
+
+	private static final class Buffer extends ByteArrayOutputStream {
+		private Buffer() {
+			super(64 << 10);
+		}
+
+		private byte[] array() {
+			return buf;
+		}
+
+		private byte[] ensure(int length) {
+			if (buf.length < length)
+				buf = new byte[length];
+			return buf;
+		}
+
+		private void trim() {
+			if (buf.length > MAX_BUFFER)
+				buf = new byte[64 << 10];
+			count = 0;
+		}
+	}
+}
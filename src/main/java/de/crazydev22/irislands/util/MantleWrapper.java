@@ -2,34 +2,66 @@ package de.crazydev22.irislands.util;
 
 import com.volmit.iris.engine.data.cache.Cache;
 import com.volmit.iris.util.documentation.ChunkCoordinates;
+import com.volmit.iris.util.documentation.RegionCoordinates;
 import com.volmit.iris.util.mantle.Mantle;
 import com.volmit.iris.util.mantle.MantleChunk;
 import com.volmit.iris.util.mantle.TectonicPlate;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Writes mantle chunks straight into the chunk array of their {@link TectonicPlate}.
+ * A plate covers 32x32 chunks, the same area as a region.
+ */
 @SuppressWarnings("unchecked")
 public class MantleWrapper {
-	private final Method getPlate;
-	private final Field chunks;
+	private final MethodHandle getPlate;
+	private final VarHandle chunks;
 
-	public MantleWrapper() throws NoSuchMethodException, NoSuchFieldException {
-		getPlate = Mantle.class.getDeclaredMethod("get", int.class, int.class);
-		getPlate.setAccessible(true);
+	public MantleWrapper() throws NoSuchMethodException, NoSuchFieldException, IllegalAccessException {
+		var lookup = MethodHandles.lookup();
+		var method = Mantle.class.getDeclaredMethod("get", int.class, int.class);
+		getPlate = MethodHandles.privateLookupIn(Mantle.class, lookup)
+				.unreflect(method)
+				.asType(MethodType.methodType(TectonicPlate.class, Mantle.class, int.class, int.class));
 
-		chunks = TectonicPlate.class.getDeclaredField("chunks");
-		chunks.setAccessible(true);
+		var field = TectonicPlate.class.getDeclaredField("chunks");
+		chunks = MethodHandles.privateLookupIn(TectonicPlate.class, lookup)
+				.unreflectVarHandle(field);
 	}
 
 	@ChunkCoordinates
 	public void setChunk(Mantle mantle, int x, int z, MantleChunk chunk) {
+		getChunks(mantle, x >> 5, z >> 5).set(Cache.to1D(x & 31, z & 31, 0, 32, 32), chunk);
+	}
+
+	/**
+	 * Resolves the plate once and writes all given chunks into it.
+	 *
+	 * @param indices slot index {@code Cache.to1D(x & 31, z & 31, 0, 32, 32)} of every chunk
+	 * @param chunks  the chunks to write, null clears the slot
+	 */
+	@RegionCoordinates
+	public void setChunks(Mantle mantle, int x, int z, int[] indices, MantleChunk[] chunks) {
+		if (indices.length == 0)
+			return;
+		var array = getChunks(mantle, x, z);
+		for (int i = 0; i < indices.length; i++)
+			array.set(indices[i], chunks[i]);
+	}
+
+	@RegionCoordinates
+	private AtomicReferenceArray<MantleChunk> getChunks(Mantle mantle, int x, int z) {
 		try {
-			var array = (AtomicReferenceArray<MantleChunk>) chunks.get(getPlate.invoke(mantle, x >> 4 >> 5, z >> 4 >> 5));
-			array.set(Cache.to1D(x >> 4 & 31, z >> 4 & 31, 0, 32, 32), chunk);
-		} catch (IllegalAccessException | InvocationTargetException e) {
+			var plate = (TectonicPlate) getPlate.invokeExact(mantle, x, z);
+			return (AtomicReferenceArray<MantleChunk>) chunks.get(plate);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
 			throw new RuntimeException(e);
 		}
 	}
@@ -0,0 +1,115 @@
+package de.crazydev22.irislands.codec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodecTest {
+	@TempDir
+	File folder;
+
+	@ParameterizedTest
+	@EnumSource(Codec.Type.class)
+	void roundTrip(Codec.Type type) {
+		var codec = Codecs.create(type, 9, null);
+		try {
+			assertRoundTrip(codec, new byte[0]);
+			assertRoundTrip(codec, sample(1, 64 << 10));
+			assertRoundTrip(codec, noise(2, 16 << 10));
+		} finally {
+			codec.close();
+		}
+	}
+
+	@Test
+	void roundTripWithDictionary() {
+		byte[] dictionary = sample(3, 16 << 10);
+		var codec = Codecs.create(Codec.Type.DEFLATE, 9, dictionary);
+		var plain = Codecs.create(Codec.Type.DEFLATE, 9, null);
+		try {
+			assertEquals(Codecs.dictionaryId(dictionary), codec.dictionary());
+			assertFalse(codec.sameFormat(plain));
+			assertFalse(codec.reads(plain));
+			assertRoundTrip(codec, new byte[0]);
+			assertRoundTrip(codec, sample(4, 64 << 10));
+			assertRoundTrip(codec, noise(5, 16 << 10));
+
+			byte[] data = Arrays.copyOf(dictionary, 4096);
+			assertTrue(codec.compress(data).length < plain.compress(data).length);
+		} finally {
+			codec.close();
+			plain.close();
+		}
+	}
+
+	@Test
+	void dictionariesAreRegisteredByTheirId() throws IOException {
+		byte[] dictionary = sample(6, 8 << 10);
+		byte[] data = sample(7, 32 << 10);
+		byte[] compressed;
+		int id;
+		try (var codecs = new Codecs(6)) {
+			assertThrows(IOException.class, () -> codecs.get(Codec.Type.DEFLATE.id, Codecs.dictionaryId(dictionary)));
+			id = codecs.saveDictionary(folder, dictionary);
+			compressed = codecs.get(Codec.Type.DEFLATE.id, id).compress(data);
+		}
+		try (var codecs = new Codecs(6)) {
+			assertEquals(1, codecs.loadDictionaries(folder).size());
+			var codec = codecs.get(Codec.Type.DEFLATE.id, id);
+			assertEquals(id, codec.dictionary());
+			assertArrayEquals(data, codec.decompress(compressed));
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(Codec.Type.class)
+	void malformedPayloadsAreRejected(Codec.Type type) {
+		var codec = Codecs.create(type, 9, null);
+		try {
+			byte[] compressed = codec.compress(sample(8, 64 << 10));
+			assertThrows(IllegalArgumentException.class, () -> codec.decompress(Arrays.copyOf(compressed, compressed.length / 2)));
+			assertThrows(IllegalArgumentException.class, () -> codec.decompress(new byte[2]));
+			assertThrows(IllegalArgumentException.class, () -> codec.decompress(new byte[]{-1, -1, -1, -1, 0}));
+		} finally {
+			codec.close();
+		}
+	}
+
+	@Test
+	void unknownCodecsAreRefused() {
+		try (var codecs = new Codecs(9)) {
+			assertThrows(IOException.class, () -> codecs.get(99, 0));
+		}
+	}
+
+	private static void assertRoundTrip(Codec codec, byte[] data) {
+		byte[] compressed = codec.compress(data);
+		assertEquals(data.length, Codec.decompressedLength(compressed));
+		assertArrayEquals(data, codec.decompress(compressed), codec.toString());
+	}
+
+	/**
+	 * @return repetitive data resembling serialized mantle chunks
+	 */
+	private static byte[] sample(int seed, int length) {
+		var random = new Random(seed);
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++)
+			data[i] = (byte) (random.nextInt(8) == 0 ? random.nextInt(16) : i >> 6);
+		return data;
+	}
+
+	private static byte[] noise(int seed, int length) {
+		byte[] data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+}
@@ -0,0 +1,86 @@
+package de.crazydev22.irislands.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CapturedIndexTest {
+	@TempDir
+	File folder;
+
+	@Test
+	void onlyCommittedChunksArePersisted() throws IOException {
+		var file = new File(folder, "captured.bin");
+		var index = new CapturedIndex(file);
+		index.set(5, 5);
+		index.set(40, -3);
+		index.commit(40 >> 5, -3 >> 5, Region.index(40, -3), true);
+		assertTrue(index.contains(5, 5));
+		index.save();
+
+		var reopened = new CapturedIndex(file);
+		assertTrue(reopened.contains(40, -3));
+		assertFalse(reopened.contains(5, 5));
+		assertFalse(reopened.contains(41, -3));
+	}
+
+	@Test
+	void clearedChunksAreDropped() throws IOException {
+		var file = new File(folder, "captured.bin");
+		var index = new CapturedIndex(file);
+		index.commit(0, 0, Region.index(1, 2), true);
+		index.commit(0, 0, Region.index(3, 4), true);
+		index.save();
+
+		var reopened = new CapturedIndex(file);
+		reopened.clear(1, 2);
+		assertFalse(reopened.contains(1, 2));
+		reopened.commit(0, 0, Region.index(1, 2), false);
+		reopened.save();
+
+		var saved = new CapturedIndex(file);
+		assertFalse(saved.contains(1, 2));
+		assertTrue(saved.contains(3, 4));
+	}
+
+	@Test
+	void manyRegionsSurviveGrowth() throws IOException {
+		var file = new File(folder, "captured.bin");
+		var index = new CapturedIndex(file);
+		for (int rx = -10; rx < 10; rx++) {
+			for (int rz = -10; rz < 10; rz++)
+				index.commit(rx, rz, Region.index(rx, rz), true);
+		}
+		index.save();
+
+		var reopened = new CapturedIndex(file);
+		for (int rx = -10; rx < 10; rx++) {
+			for (int rz = -10; rz < 10; rz++) {
+				int x = (rx << 5) + (rx & 31), z = (rz << 5) + (rz & 31);
+				assertTrue(reopened.contains(x, z), "region " + rx + ", " + rz);
+				assertFalse(reopened.contains(x ^ 1, z), "region " + rx + ", " + rz);
+			}
+		}
+	}
+
+	@Test
+	void unchangedIndexIsNotWritten() throws IOException {
+		var file = new File(folder, "captured.bin");
+		var index = new CapturedIndex(file);
+		index.set(0, 0);
+		index.save();
+		assertFalse(file.exists());
+	}
+
+	@Test
+	void foreignFilesAreRefused() throws IOException {
+		var file = new File(folder, "captured.bin");
+		Files.write(file.toPath(), new byte[12]);
+		assertThrows(IOException.class, () -> new CapturedIndex(file));
+	}
+}
@@ -0,0 +1,191 @@
+package de.crazydev22.irislands.data;
+
+import de.crazydev22.irislands.codec.Codecs;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionFileTest {
+	@TempDir
+	File folder;
+	private Codecs codecs;
+	private File file;
+
+	@BeforeEach
+	void setUp() {
+		codecs = new Codecs(9);
+		file = new File(folder, "0_0.lz4b");
+	}
+
+	@AfterEach
+	void tearDown() {
+		codecs.close();
+	}
+
+	@Test
+	void writeAndRead() throws IOException {
+		new RegionFile(file, codecs).write(source(Map.of(0, 1, 1023, 2)));
+
+		var region = new RegionFile(file, codecs);
+		assertSlot(region, 0, 1);
+		assertSlot(region, 1023, 2);
+		assertNull(region.read(5));
+		assertFalse(region.hasStaleJournal());
+	}
+
+	@Test
+	void appendIsReplayedAndCompacted() throws IOException {
+		var region = new RegionFile(file, codecs);
+		region.write(source(Map.of(0, 1)));
+		region.append(source(Map.of(0, 2, 7, 3)));
+
+		var reopened = new RegionFile(file, codecs);
+		assertSlot(reopened, 0, 2);
+		assertSlot(reopened, 7, 3);
+		assertEquals(0, reopened.tornJournalBytes());
+
+		reopened.compact();
+		assertFalse(reopened.getJournal().exists());
+		var compacted = new RegionFile(file, codecs);
+		assertSlot(compacted, 0, 2);
+		assertSlot(compacted, 7, 3);
+	}
+
+	@Test
+	void tornJournalTailIsDropped() throws IOException {
+		var region = new RegionFile(file, codecs);
+		region.write(source(Map.of(0, 1)));
+		region.append(source(Map.of(1, 2)));
+		region.append(source(Map.of(2, 3)));
+		try (var journal = new RandomAccessFile(region.getJournal(), "rw")) {
+			journal.setLength(journal.length() - 5);
+		}
+
+		var reopened = new RegionFile(file, codecs);
+		assertSlot(reopened, 0, 1);
+		assertSlot(reopened, 1, 2);
+		assertNull(reopened.read(2));
+		assertTrue(reopened.tornJournalBytes() > 0);
+
+		reopened.append(source(Map.of(3, 4)));
+		var appended = new RegionFile(file, codecs);
+		assertSlot(appended, 1, 2);
+		assertNull(appended.read(2));
+		assertSlot(appended, 3, 4);
+		assertEquals(0, appended.tornJournalBytes());
+	}
+
+	@Test
+	void journalWithoutHeaderIsIgnored() throws IOException {
+		new RegionFile(file, codecs).write(source(Map.of(0, 1)));
+		Files.write(new File(file.getPath() + ".journal").toPath(), new byte[3]);
+
+		var region = new RegionFile(file, codecs);
+		assertSlot(region, 0, 1);
+		region.append(source(Map.of(1, 2)));
+		assertSlot(new RegionFile(file, codecs), 1, 2);
+	}
+
+	/**
+	 * A crash after the rewritten file was moved into place but before the journal was deleted
+	 * leaves the journal of the previous generation behind, it must not be replayed over the new file.
+	 */
+	@Test
+	void staleJournalIsNotReplayed() throws IOException {
+		var region = new RegionFile(file, codecs);
+		region.write(source(Map.of(0, 1)));
+		region.append(source(Map.of(0, 2, 1, 2)));
+		byte[] journal = Files.readAllBytes(region.getJournal().toPath());
+
+		region.write(source(Map.of(0, 3)));
+		assertFalse(region.getJournal().exists());
+		Files.write(region.getJournal().toPath(), journal);
+
+		var reopened = new RegionFile(file, codecs);
+		assertTrue(reopened.hasStaleJournal());
+		assertEquals(0, reopened.tornJournalBytes());
+		assertSlot(reopened, 0, 3);
+		assertSlot(reopened, 1, 2);
+
+		reopened.append(source(Map.of(2, 4)));
+		assertFalse(reopened.hasStaleJournal());
+		var appended = new RegionFile(file, codecs);
+		assertFalse(appended.hasStaleJournal());
+		assertSlot(appended, 0, 3);
+		assertSlot(appended, 1, 2);
+		assertSlot(appended, 2, 4);
+	}
+
+	@Test
+	void damagedSlotIsDetected() throws IOException {
+		new RegionFile(file, codecs).write(source(Map.of(0, 1)));
+		byte[] data = Files.readAllBytes(file.toPath());
+		data[data.length - 1] ^= 1;
+		Files.write(file.toPath(), data);
+
+		var region = new RegionFile(file, codecs);
+		assertThrows(IOException.class, () -> region.read(0));
+		assertThrows(IOException.class, () -> region.verify(0));
+	}
+
+	@Test
+	void otherVersionsAreRefused() throws IOException {
+		var header = ByteBuffer.allocate(20 + RegionFile.SLOTS * 20).putInt(RegionFile.MAGIC).putInt(RegionFile.VERSION - 1);
+		Files.write(file.toPath(), header.array());
+
+		assertTrue(RegionFile.isUnsupported(file));
+		assertThrows(IOException.class, () -> new RegionFile(file, codecs));
+	}
+
+	private void assertSlot(RegionFile region, int index, int seed) throws IOException {
+		var slot = region.read(index);
+		assertNotNull(slot, "slot " + index);
+		assertArrayEquals(payload(seed), codecs.current().decompress(slot.mantle()));
+		assertArrayEquals(payload(-seed), slot.world());
+	}
+
+	/**
+	 * @param slots seed of the payloads per modified slot
+	 */
+	private RegionFile.Source source(Map<Integer, Integer> slots) {
+		return new RegionFile.Source() {
+			@Override
+			public boolean modified(int index) {
+				return slots.containsKey(index);
+			}
+
+			@Override
+			public byte[] mantle(int index) {
+				var seed = slots.get(index);
+				return seed != null ? codecs.current().compress(payload(seed)) : null;
+			}
+
+			@Override
+			public byte[] world(int index) {
+				var seed = slots.get(index);
+				return seed != null ? payload(-seed) : null;
+			}
+		};
+	}
+
+	private static byte[] payload(int seed) {
+		var random = new Random(seed);
+		byte[] data = new byte[64 + random.nextInt(4096)];
+		Arrays.fill(data, 0, data.length / 2, (byte) seed);
+		for (int i = data.length / 2; i < data.length; i++)
+			data[i] = (byte) random.nextInt(4);
+		return data;
+	}
+}
@@ -0,0 +1,46 @@
+package de.crazydev22.irislands.data;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionMigratorTest {
+
+	@Test
+	void originRegionKeepsItsSlots() {
+		for (int legacy = 0; legacy < RegionFile.SLOTS; legacy++)
+			assertEquals(legacy, RegionMigrator.remap(legacy, 0, 0));
+	}
+
+	@Test
+	void remappedSlotsHoldTheLegacyChunk() {
+		int[][] regions = {{1, 0}, {-1, 0}, {1, -1}, {-1, 1}, {2, -1}, {-2, 1}};
+		for (var region : regions) {
+			int mapped = 0;
+			boolean[] used = new boolean[RegionFile.SLOTS];
+			for (int legacy = 0; legacy < RegionFile.SLOTS; legacy++) {
+				int slot = RegionMigrator.remap(legacy, region[0], region[1]);
+				if (slot < 0)
+					continue;
+				assertTrue(slot < RegionFile.SLOTS);
+				assertFalse(used[slot], "slot " + slot + " mapped twice");
+				used[slot] = true;
+				mapped++;
+
+				int x = (region[0] << 5) + (slot & 31);
+				int z = (region[1] << 5) + (slot >> 5);
+				assertEquals(legacy, x + 32 * z, "region " + region[0] + ", " + region[1] + " slot " + slot);
+			}
+			assertTrue(mapped > 0, "region " + region[0] + ", " + region[1] + " had no chunk in its legacy slots");
+		}
+	}
+
+	@Test
+	void regionsOutsideTheLegacyRangeMapNothing() {
+		int[][] regions = {{0, 1}, {0, -1}, {-1, -1}, {3, -2}, {5, 5}};
+		for (var region : regions) {
+			for (int legacy = 0; legacy < RegionFile.SLOTS; legacy++)
+				assertEquals(-1, RegionMigrator.remap(legacy, region[0], region[1]));
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package de.crazydev22.irislands.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+
+	@Test
+	void smallValuesAreExact() {
+		for (long value = 0; value < 4; value++) {
+			var histogram = new Histogram("test");
+			histogram.record(value);
+			histogram.record(Long.MAX_VALUE);
+			assertEquals(value, histogram.percentile(0.5));
+		}
+	}
+
+	/**
+	 * Every value is reported as the upper bound of its bucket, which is at most a quarter above it.
+	 */
+	@Test
+	void bucketBoundsStayWithinAQuarter() {
+		for (int exp = 2; exp < 62; exp++) {
+			long base = 1L << exp, step = base >> 2;
+			long[] values = {base, base + 1, base + step - 1, base + step, base + 3 * step, (base << 1) - 1};
+			for (long value : values) {
+				var histogram = new Histogram("test");
+				histogram.record(value);
+				histogram.record(Long.MAX_VALUE);
+				long bound = histogram.percentile(0.5);
+				assertTrue(bound >= value, "bound " + bound + " below " + value);
+				assertTrue(bound - value <= value / 4, "bound " + bound + " too far above " + value);
+			}
+		}
+	}
+
+	@Test
+	void adjacentBucketsDoNotOverlap() {
+		for (int exp = 2; exp < 62; exp++) {
+			long base = 1L << exp, step = base >> 2;
+			for (int sub = 0; sub < 4; sub++) {
+				long first = base + sub * step;
+				long last = first + step - 1;
+				assertEquals(upper(first), upper(last), "bucket starting at " + first);
+				if (first > 4)
+					assertEquals(first - 1, upper(first - 1), "bucket ending before " + first);
+			}
+		}
+	}
+
+	@Test
+	void percentilesAreCappedByTheMaximum() {
+		var histogram = new Histogram("test");
+		histogram.record(1000);
+		assertEquals(1000, histogram.percentile(0.99));
+		assertEquals(1000, histogram.max());
+	}
+
+	@Test
+	void percentilesFollowTheRank() {
+		var histogram = new Histogram("test");
+		for (int i = 1; i <= 100; i++)
+			histogram.record(i * 1000L);
+		assertEquals(100, histogram.count());
+		assertEquals(50_500, histogram.mean());
+		long p50 = histogram.percentile(0.5);
+		assertTrue(p50 >= 50_000 && p50 <= 62_500, "p50 " + p50);
+		assertEquals(100_000, histogram.percentile(1));
+	}
+
+	@Test
+	void negativeValuesCountAsZero() {
+		var histogram = new Histogram("test");
+		histogram.record(-5);
+		assertEquals(1, histogram.count());
+		assertEquals(0, histogram.percentile(1));
+	}
+
+	@Test
+	void resetForgetsEverything() {
+		var histogram = new Histogram("test");
+		histogram.record(42);
+		histogram.reset();
+		assertEquals(0, histogram.count());
+		assertEquals(0, histogram.mean());
+		assertEquals(0, histogram.max());
+		assertEquals(0, histogram.percentile(0.5));
+	}
+
+	private static long upper(long value) {
+		var histogram = new Histogram("test");
+		histogram.record(value);
+		histogram.record(Long.MAX_VALUE);
+		return histogram.percentile(0.5);
+	}
+}